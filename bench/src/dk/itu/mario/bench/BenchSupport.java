@@ -0,0 +1,38 @@
+package dk.itu.mario.bench;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+
+import dk.itu.mario.engine.Art;
+import dk.itu.mario.engine.sonar.FakeSoundEngine;
+import dk.itu.mario.level.Level;
+
+/**
+ * Shared setup for the benchmarks. Everything runs with java.awt.headless,
+ * so the graphics configuration comes from an offscreen image instead of a
+ * screen device.
+ */
+final class BenchSupport
+{
+    private static GraphicsConfiguration graphicsConfiguration;
+
+    private BenchSupport()
+    {
+    }
+
+    static synchronized GraphicsConfiguration graphicsConfiguration()
+    {
+        if (graphicsConfiguration == null)
+        {
+            BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            graphicsConfiguration = image.createGraphics().getDeviceConfiguration();
+            Art.init(graphicsConfiguration, new FakeSoundEngine());
+        }
+        return graphicsConfiguration;
+    }
+
+    static void loadBehaviors()
+    {
+        Level.initBehaviors();
+    }
+}
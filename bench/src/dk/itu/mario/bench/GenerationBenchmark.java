@@ -0,0 +1,84 @@
+package dk.itu.mario.bench;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import maven.code.Configuration;
+import dk.itu.mario.MarioInterface.GamePlay;
+import dk.itu.mario.MarioInterface.LevelInterface;
+import dk.itu.mario.level.CustomizedLevel;
+import dk.itu.mario.level.MyLevel;
+import dk.itu.mario.level.RandomLevel;
+
+/**
+ * Cost of generating one full width level with each generator. The seed
+ * changes on every call so the generators cannot settle on one layout.
+ *
+ * The endurance benchmarks compare making an ENDURANCE_WIDTH level up
+ * front with making it streaming, both until it can be played and until
+ * every column is generated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenerationBenchmark
+{
+    private static final int ENDURANCE_WIDTH = 10000;
+
+    private GamePlay playerMetrics;
+    private long seed;
+
+    @Setup
+    public void setup()
+    {
+        BenchSupport.loadBehaviors();
+        playerMetrics = new GamePlay();
+    }
+
+    @Benchmark
+    public MyLevel myLevel()
+    {
+        return new MyLevel(320, 15, seed++, 1, LevelInterface.TYPE_OVERGROUND,
+                playerMetrics, new HashMap<Configuration, Integer>());
+    }
+
+    @Benchmark
+    public RandomLevel randomLevel()
+    {
+        return new RandomLevel(320, 15, seed++, 1, LevelInterface.TYPE_OVERGROUND);
+    }
+
+    @Benchmark
+    public CustomizedLevel customizedLevel()
+    {
+        return new CustomizedLevel(320, 15, seed++, 1, LevelInterface.TYPE_OVERGROUND, playerMetrics);
+    }
+
+    @Benchmark
+    public RandomLevel enduranceEager()
+    {
+        return new RandomLevel(ENDURANCE_WIDTH, 15, seed++, 1, LevelInterface.TYPE_OVERGROUND);
+    }
+
+    @Benchmark
+    public RandomLevel enduranceStreamingStart()
+    {
+        return RandomLevel.streaming(ENDURANCE_WIDTH, 15, seed++, 1, LevelInterface.TYPE_OVERGROUND);
+    }
+
+    @Benchmark
+    public RandomLevel enduranceStreamingFull()
+    {
+        RandomLevel level = RandomLevel.streaming(ENDURANCE_WIDTH, 15, seed++, 1, LevelInterface.TYPE_OVERGROUND);
+        level.generateUpTo(ENDURANCE_WIDTH);
+        return level;
+    }
+}
@@ -0,0 +1,61 @@
+package dk.itu.mario.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import dk.itu.mario.MarioInterface.LevelInterface;
+import dk.itu.mario.level.Level;
+import dk.itu.mario.level.RandomLevel;
+
+/**
+ * Level.isBlocking over a fixed set of random cells, including some just
+ * outside the map so the clamping paths are covered too.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IsBlockingBenchmark
+{
+    private static final int QUERIES = 1024;
+
+    private Level level;
+    private int[] xs = new int[QUERIES];
+    private int[] ys = new int[QUERIES];
+    private float[] yas = new float[QUERIES];
+
+    @Setup
+    public void setup()
+    {
+        BenchSupport.loadBehaviors();
+        level = new RandomLevel(320, 15, 4731L, 1, LevelInterface.TYPE_OVERGROUND);
+
+        Random random = new Random(42);
+        for (int i = 0; i < QUERIES; i++)
+        {
+            xs[i] = random.nextInt(level.getWidth() + 2) - 1;
+            ys[i] = random.nextInt(level.getHeight() + 2) - 1;
+            yas[i] = random.nextBoolean() ? -1 : 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int isBlocking()
+    {
+        int blocking = 0;
+        for (int i = 0; i < QUERIES; i++)
+        {
+            if (level.isBlocking(xs[i], ys[i], 0, yas[i])) blocking++;
+        }
+        return blocking;
+    }
+}
@@ -0,0 +1,107 @@
+package dk.itu.mario.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import dk.itu.mario.engine.sonar.FixedSoundSource;
+import dk.itu.mario.engine.sonar.SoundListener;
+import dk.itu.mario.engine.sonar.SoundProducer;
+import dk.itu.mario.engine.sonar.mixer.ListenerMixer;
+
+/**
+ * ListenerMixer.read filling one 10 ms buffer, the amount SonarSoundEngine
+ * mixes per tick, with a number of sounds playing at once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MixerBenchmark
+{
+    private static final int RATE = 44100;
+
+    @Param({"4", "32"})
+    public int sounds;
+
+    private ListenerMixer mixer;
+    private float[] leftBuf = new float[RATE / 100];
+    private float[] rightBuf = new float[RATE / 100];
+
+    @Setup
+    public void setup()
+    {
+        mixer = new ListenerMixer(32);
+        mixer.setSoundListener(new Listener());
+
+        Random random = new Random(42);
+        for (int i = 0; i < sounds; i++)
+        {
+            float[] buf = new float[RATE];
+            for (int j = 0; j < buf.length; j++)
+                buf[j] = random.nextFloat() * 2 - 1;
+            mixer.addSoundProducer(new Loop(buf), new FixedSoundSource(random.nextInt(320), random.nextInt(240)), 1, 1);
+        }
+        mixer.update(0);
+    }
+
+    @Benchmark
+    public float read()
+    {
+        return mixer.read(leftBuf, rightBuf, RATE);
+    }
+
+    private static class Listener implements SoundListener
+    {
+        public float getX(float alpha)
+        {
+            return 160;
+        }
+
+        public float getY(float alpha)
+        {
+            return 120;
+        }
+    }
+
+    /**
+     * A sample that never runs out, so the set of live sounds stays constant
+     */
+    private static class Loop implements SoundProducer
+    {
+        private final float[] sample;
+        private int pos = 0;
+
+        Loop(float[] sample)
+        {
+            this.sample = sample;
+        }
+
+        public float read(float[] buf, int readRate)
+        {
+            for (int i = 0; i < buf.length; i++)
+            {
+                buf[i] = sample[pos];
+                if (++pos == sample.length) pos = 0;
+            }
+            return 1;
+        }
+
+        public void skip(int samplesToSkip, int readRate)
+        {
+            pos = (pos + samplesToSkip) % sample.length;
+        }
+
+        public boolean isLive()
+        {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package dk.itu.mario.bench;
+
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import dk.itu.mario.MarioInterface.LevelInterface;
+import dk.itu.mario.engine.LevelRenderer;
+import dk.itu.mario.engine.Scale2x;
+import dk.itu.mario.level.RandomLevel;
+
+/**
+ * The per frame rendering work: scrolling the tile layer, which copies the
+ * old area and redraws the uncovered strip, and the Scale2x pass used when
+ * the window is shown at double size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBenchmark
+{
+    private LevelRenderer layer;
+    private int maxCam;
+    private int xCam;
+
+    private Scale2x scale2x;
+    private Image frame;
+
+    @Setup
+    public void setup()
+    {
+        GraphicsConfiguration gc = BenchSupport.graphicsConfiguration();
+        BenchSupport.loadBehaviors();
+
+        RandomLevel level = new RandomLevel(320, 15, 4731L, 1, LevelInterface.TYPE_OVERGROUND);
+        layer = new LevelRenderer(level, gc, 320, 240);
+        maxCam = level.getWidth() * 16 - 320;
+
+        // A realistic frame to scale: the level layer as the game draws it
+        frame = gc.createCompatibleImage(320, 240, Transparency.OPAQUE);
+        Graphics g = frame.getGraphics();
+        layer.render(g, 0, 0);
+        g.dispose();
+        scale2x = new Scale2x(320, 240);
+    }
+
+    /**
+     * Running speed is about 8 pixels per tick, so each call redraws an
+     * 8 pixel wide strip of tiles.
+     */
+    @Benchmark
+    public LevelRenderer setCam()
+    {
+        xCam += 8;
+        if (xCam > maxCam) xCam = 0;
+        layer.setCam(xCam, 0);
+        return layer;
+    }
+
+    @Benchmark
+    public Image scale2x()
+    {
+        return scale2x.scale(frame);
+    }
+}
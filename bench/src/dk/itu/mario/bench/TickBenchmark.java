@@ -0,0 +1,71 @@
+package dk.itu.mario.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import dk.itu.mario.MarioInterface.LevelInterface;
+import dk.itu.mario.engine.sprites.Enemy;
+import dk.itu.mario.level.RandomLevel;
+import dk.itu.mario.scene.HeadlessLevelScene;
+
+/**
+ * One game second (24 ticks) of LevelScene.tick() with a crowd of enemies on
+ * screen. The scene is rebuilt before every invocation so the crowd does not
+ * thin out as enemies walk off or fall into gaps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TickBenchmark
+{
+    private static final int TICKS = 24;
+
+    @Param({"200"})
+    public int sprites;
+
+    private RandomLevel level;
+    private HeadlessLevelScene scene;
+
+    @Setup(Level.Trial)
+    public void createLevel()
+    {
+        BenchSupport.loadBehaviors();
+        level = new RandomLevel(320, 15, 4731L, 0, LevelInterface.TYPE_OVERGROUND);
+    }
+
+    @Setup(Level.Invocation)
+    public void createScene()
+    {
+        scene = new HeadlessLevelScene(level);
+        scene.init();
+
+        // Walking away from mario, spread over the visible area
+        for (int i = 0; i < sprites; i++)
+        {
+            int x = 64 + (i * 256) / sprites;
+            int y = 16 + (i % 8) * 16;
+            scene.addSprite(new Enemy(scene, x, y, 1, Enemy.ENEMY_GOOMBA, false));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public float tick()
+    {
+        for (int i = 0; i < TICKS; i++)
+        {
+            scene.tick();
+        }
+        return scene.mario.x;
+    }
+}
@@ -1,14 +1,25 @@
 package dk.itu.mario.MarioInterface;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 public class GamePlay implements Serializable {
 
 	private static final long serialVersionUID = 1L;
+
+	public static final int MAGIC = 0x3150474d; // "MGP1" in little endian
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 8;
+	// 39 ints and 6 doubles, in the order they are declared below
+	public static final int RECORD_SIZE = 39 * 4 + 6 * 8;
 	
 	public int completionTime; //counts only the current run on the level, excluding death games
 	public int totalTime;//sums all the time, including from previous games if player died
@@ -60,32 +71,222 @@ public class GamePlay implements Serializable {
 		return completionTime;
 	}
 	
+	/**
+	 * Writes this profile to fileName as a single profile file, see
+	 * GamePlayFile for the layout
+	 */
 	public void write(String fileName){
-		ObjectOutputStream out = null;
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		putHeader(buffer);
+		put(buffer);
+		buffer.flip();
 		try {
-			FileOutputStream fos = new FileOutputStream(fileName);
-			out =  new ObjectOutputStream(fos);
-			out.writeObject(this);
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
+			FileChannel channel = new FileOutputStream(fileName).getChannel();
+			try {
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		
 	}
-	
+
+	/**
+	 * Adds this profile to the end of a multi profile file, creating it if
+	 * it does not exist yet
+	 */
+	public void append(String fileName) throws IOException {
+		FileChannel channel = new RandomAccessFile(fileName, "rw").getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			long size = channel.size();
+			if (size == 0) {
+				putHeader(buffer);
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+					;
+				header.flip();
+				if (readHeader(header) != RECORD_SIZE)
+					throw new IOException(fileName + " holds profiles of a different version");
+			}
+			put(buffer);
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer, size + buffer.position());
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the first profile in fileName. Files written by older versions
+	 * with Java serialization are still read.
+	 *
+	 * @return the profile, or null if the file could not be read
+	 */
 	public static GamePlay read(String fileName){
-		FileInputStream fis = null;
-	    ObjectInputStream in = null;
-	    GamePlay gp =  null;
 		try {
-			fis = new FileInputStream(fileName);
-			in = new ObjectInputStream(fis);
-			gp = (GamePlay)in.readObject();
-			in.close();
-		} catch (Exception e) {
+			GamePlayFile file = GamePlayFile.open(new File(fileName));
+			try {
+				if (file.size() > 0)
+					return file.get(0);
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			GamePlay legacy = readSerialized(fileName);
+			if (legacy != null)
+				return legacy;
 			e.printStackTrace();
 		}
-		return gp;
+		return null;
+	}
+
+	private static GamePlay readSerialized(String fileName){
+		try {
+			ObjectInputStream in = new ObjectInputStream(new FileInputStream(fileName));
+			try {
+				return (GamePlay)in.readObject();
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the header of a profile file: MAGIC, VERSION and RECORD_SIZE.
+	 * The buffer has to be little endian.
+	 */
+	public static void putHeader(ByteBuffer buffer){
+		buffer.putInt(MAGIC);
+		buffer.putShort((short) VERSION);
+		buffer.putShort((short) RECORD_SIZE);
+	}
+
+	/**
+	 * Checks the header of a profile file
+	 *
+	 * @return the size of a record in the file. Later versions only add
+	 *         fields at the end of the record, so it can be larger than
+	 *         RECORD_SIZE.
+	 */
+	public static int readHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+			throw new IOException("Not a GamePlay profile file");
+		int version = buffer.getShort() & 0xffff;
+		int recordSize = buffer.getShort() & 0xffff;
+		if (version < 1 || recordSize < RECORD_SIZE)
+			throw new IOException("Unsupported GamePlay profile version " + version);
+		return recordSize;
+	}
+
+	/**
+	 * Writes the RECORD_SIZE bytes of this profile at the buffer's position.
+	 * The buffer has to be little endian.
+	 */
+	public void put(ByteBuffer buffer){
+		buffer.putInt(completionTime);
+		buffer.putInt(totalTime);
+		buffer.putInt(jumpsNumber);
+		buffer.putInt(duckNumber);
+		buffer.putInt(timeSpentDucking);
+		buffer.putInt(timesPressedRun);
+		buffer.putInt(timeSpentRunning);
+		buffer.putInt(timeRunningRight);
+		buffer.putInt(timeRunningLeft);
+		buffer.putInt(emptyBlocksDestroyed);
+		buffer.putInt(coinsCollected);
+		buffer.putInt(coinBlocksDestroyed);
+		buffer.putInt(powerBlocksDestroyed);
+		buffer.putInt(kickedShells);
+		buffer.putInt(enemyKillByFire);
+		buffer.putInt(enemyKillByKickingShell);
+		buffer.putInt(totalTimeLittleMode);
+		buffer.putInt(totalTimeLargeMode);
+		buffer.putInt(totalTimeFireMode);
+		buffer.putInt(timesSwichingPower);
+		buffer.putDouble(aimlessJumps);
+		buffer.putDouble(percentageBlocksDestroyed);
+		buffer.putDouble(percentageCoinBlocksDestroyed);
+		buffer.putDouble(percentageEmptyBlockesDestroyed);
+		buffer.putDouble(percentagePowerBlockDestroyed);
+		buffer.putDouble(timesOfDeathByFallingIntoGap);
+		buffer.putInt(totalEnemies);
+		buffer.putInt(totalEmptyBlocks);
+		buffer.putInt(totalCoinBlocks);
+		buffer.putInt(totalpowerBlocks);
+		buffer.putInt(totalCoins);
+		buffer.putInt(timesOfDeathByRedTurtle);
+		buffer.putInt(timesOfDeathByGoomba);
+		buffer.putInt(timesOfDeathByGreenTurtle);
+		buffer.putInt(timesOfDeathByArmoredTurtle);
+		buffer.putInt(timesOfDeathByJumpFlower);
+		buffer.putInt(timesOfDeathByCannonBall);
+		buffer.putInt(timesOfDeathByChompFlower);
+		buffer.putInt(RedTurtlesKilled);
+		buffer.putInt(GreenTurtlesKilled);
+		buffer.putInt(ArmoredTurtlesKilled);
+		buffer.putInt(GoombasKilled);
+		buffer.putInt(CannonBallKilled);
+		buffer.putInt(JumpFlowersKilled);
+		buffer.putInt(ChompFlowersKilled);
+	}
+
+	/**
+	 * Reads a profile written by put at the buffer's position. The buffer
+	 * has to be little endian.
+	 */
+	public void get(ByteBuffer buffer){
+		completionTime = buffer.getInt();
+		totalTime = buffer.getInt();
+		jumpsNumber = buffer.getInt();
+		duckNumber = buffer.getInt();
+		timeSpentDucking = buffer.getInt();
+		timesPressedRun = buffer.getInt();
+		timeSpentRunning = buffer.getInt();
+		timeRunningRight = buffer.getInt();
+		timeRunningLeft = buffer.getInt();
+		emptyBlocksDestroyed = buffer.getInt();
+		coinsCollected = buffer.getInt();
+		coinBlocksDestroyed = buffer.getInt();
+		powerBlocksDestroyed = buffer.getInt();
+		kickedShells = buffer.getInt();
+		enemyKillByFire = buffer.getInt();
+		enemyKillByKickingShell = buffer.getInt();
+		totalTimeLittleMode = buffer.getInt();
+		totalTimeLargeMode = buffer.getInt();
+		totalTimeFireMode = buffer.getInt();
+		timesSwichingPower = buffer.getInt();
+		aimlessJumps = buffer.getDouble();
+		percentageBlocksDestroyed = buffer.getDouble();
+		percentageCoinBlocksDestroyed = buffer.getDouble();
+		percentageEmptyBlockesDestroyed = buffer.getDouble();
+		percentagePowerBlockDestroyed = buffer.getDouble();
+		timesOfDeathByFallingIntoGap = buffer.getDouble();
+		totalEnemies = buffer.getInt();
+		totalEmptyBlocks = buffer.getInt();
+		totalCoinBlocks = buffer.getInt();
+		totalpowerBlocks = buffer.getInt();
+		totalCoins = buffer.getInt();
+		timesOfDeathByRedTurtle = buffer.getInt();
+		timesOfDeathByGoomba = buffer.getInt();
+		timesOfDeathByGreenTurtle = buffer.getInt();
+		timesOfDeathByArmoredTurtle = buffer.getInt();
+		timesOfDeathByJumpFlower = buffer.getInt();
+		timesOfDeathByCannonBall = buffer.getInt();
+		timesOfDeathByChompFlower = buffer.getInt();
+		RedTurtlesKilled = buffer.getInt();
+		GreenTurtlesKilled = buffer.getInt();
+		ArmoredTurtlesKilled = buffer.getInt();
+		GoombasKilled = buffer.getInt();
+		CannonBallKilled = buffer.getInt();
+		JumpFlowersKilled = buffer.getInt();
+		ChompFlowersKilled = buffer.getInt();
 	}
 
 	@Override
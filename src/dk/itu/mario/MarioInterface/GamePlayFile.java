@@ -0,0 +1,99 @@
+package dk.itu.mario.MarioInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only view of a file of GamePlay profiles. The file is
+ *
+ *   int   GamePlay.MAGIC
+ *   short version
+ *   short size of a record
+ *   the records, one per profile, little endian in the order the fields
+ *         of GamePlay are declared
+ *
+ * GamePlay.write makes a file with one profile and GamePlay.append adds
+ * profiles to the end of one. The file is memory mapped, so scanning a large
+ * batch of profiles does not copy it into the heap first.
+ */
+public class GamePlayFile {
+
+	// Mapped windows hold a whole number of records and stay below 1 GB
+	private static final long WINDOW_SIZE = 1L << 30;
+
+	private final RandomAccessFile file;
+	private final int recordSize;
+	private final int recordsPerWindow;
+	private final int size;
+	private final ByteBuffer[] windows;
+
+	private GamePlayFile(RandomAccessFile file) throws IOException {
+		this.file = file;
+		FileChannel channel = file.getChannel();
+
+		ByteBuffer header = ByteBuffer.allocate(GamePlay.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+			;
+		header.flip();
+		recordSize = GamePlay.readHeader(header);
+
+		long length = channel.size() - GamePlay.HEADER_SIZE;
+		if (length / recordSize > Integer.MAX_VALUE)
+			throw new IOException("Too many profiles in one file");
+		size = (int) (length / recordSize);
+		recordsPerWindow = (int) (WINDOW_SIZE / recordSize);
+
+		windows = new ByteBuffer[(size + recordsPerWindow - 1) / recordsPerWindow];
+		for (int i = 0; i < windows.length; i++) {
+			long start = GamePlay.HEADER_SIZE + (long) i * recordsPerWindow * recordSize;
+			long records = Math.min(recordsPerWindow, size - (long) i * recordsPerWindow);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, records * recordSize);
+			windows[i] = window.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	public static GamePlayFile open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return new GamePlayFile(raf);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of profiles in the file
+	 */
+	public int size() {
+		return size;
+	}
+
+	public GamePlay get(int index) {
+		return get(index, new GamePlay());
+	}
+
+	/**
+	 * Reads profile index into an existing GamePlay, so a scan over the file
+	 * can reuse one object
+	 *
+	 * @return into
+	 */
+	public GamePlay get(int index, GamePlay into) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("No profile " + index + " in file with " + size);
+		ByteBuffer window = windows[index / recordsPerWindow].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		window.position((index % recordsPerWindow) * recordSize);
+		into.get(window);
+		return into;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+}
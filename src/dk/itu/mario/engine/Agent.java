@@ -0,0 +1,15 @@
+package dk.itu.mario.engine;
+
+/**
+ * Plays mario instead of the keyboard. A LevelScene with an agent calls it
+ * once every tick with the same Observation, filled in for that tick, and
+ * gives mario the keys it returns.
+ */
+public interface Agent {
+
+	/**
+	 * @return the keys to hold this tick, bit 1 << Mario.KEY_* for every key
+	 *         that is pressed, see Mario.setKeys
+	 */
+	public byte act(Observation observation);
+}
@@ -43,6 +43,9 @@ public class Art
     public static Image[][] enemies;
     public static Image[][] items;
     public static Image[][] level;
+    // ARGB pixels of every 16x16 level tile, tile b at b * 256, for the
+    // software blitter in LevelRenderer
+    public static int[] levelTiles;
     public static Image[][] particles;
     public static Image[][] font;
     public static Image[][] bg;
@@ -72,6 +75,7 @@ public class Art
             enemies = cutImage(gc, PREFIX+"/enemysheet.png", 16, 32);
             items = cutImage(gc,PREFIX+ "/itemsheet.png", 16, 16);
             level = cutImage(gc, PREFIX+"/mapsheet.png", 16, 16);
+            levelTiles = cutPixels(PREFIX+"/mapsheet.png", 16, 16);
             map = cutImage(gc, PREFIX+"/worldmap.png", 16, 16);
             particles = cutImage(gc, PREFIX+"/particlesheet.png", 8, 8);
             bg = cutImage(gc,PREFIX+ "/bgsheet.png", 32, 32);
@@ -155,6 +159,28 @@ public class Art
         return images;
     }
 
+    /**
+     * Cuts a sheet into tiles like cutImage, but as one ARGB array. Tile
+     * (x, y) of the sheet starts at (x + y * columns) * xSize * ySize and
+     * its rows follow each other.
+     */
+    private static int[] cutPixels(String imageName, int xSize, int ySize) throws IOException
+    {
+        InputStream p=ResourcesManager.class.getResourceAsStream(imageName);
+        BufferedImage source = ImageIO.read(p);
+        int columns = source.getWidth() / xSize;
+        int rows = source.getHeight() / ySize;
+        int[] pixels = new int[columns * rows * xSize * ySize];
+        for (int y = 0; y < rows; y++)
+        {
+            for (int x = 0; x < columns; x++)
+            {
+                source.getRGB(x * xSize, y * ySize, xSize, ySize, pixels, (x + y * columns) * xSize * ySize, xSize);
+            }
+        }
+        return pixels;
+    }
+
     public static void startMusic(int song)
     {
     	if(!mute){
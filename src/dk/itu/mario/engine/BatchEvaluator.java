@@ -0,0 +1,354 @@
+package dk.itu.mario.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import maven.code.Configuration;
+import dk.itu.mario.MarioInterface.Constraints;
+import dk.itu.mario.MarioInterface.GamePlay;
+import dk.itu.mario.MarioInterface.LevelInterface;
+import dk.itu.mario.engine.sprites.Enemy;
+import dk.itu.mario.engine.sprites.Mario;
+import dk.itu.mario.level.Level;
+import dk.itu.mario.level.MyLevel;
+import dk.itu.mario.level.RandomLevel;
+import dk.itu.mario.scene.HeadlessLevelScene;
+
+/**
+ * Generates MyLevels for a range of seeds on a work-stealing pool, checks
+ * each against the constraints and plays it headless with a scripted agent.
+ *
+ * Results are streamed to a binary file: a header (MAGIC, first seed, count)
+ * followed by one record per seed, in completion order:
+ *
+ *   long  seed
+ *   byte  flags (FLAG_VALID, FLAG_COMPLETED)
+ *   int   ticks played
+ *   byte  number of deaths n
+ *   short tile x of each death, n times
+ *
+ * In endurance mode every seed is a streaming RandomLevel instead, which
+ * only generates the columns mario gets near, so levels thousands of tiles
+ * wide start at once. Endurance levels are not checked against the
+ * constraints, which are for MyLevels, and are never flagged valid.
+ */
+public class BatchEvaluator {
+
+	public static final int MAGIC = 0x4d424531; // "MBE1"
+
+	public static final int FLAG_VALID = 1;
+	public static final int FLAG_COMPLETED = 2;
+
+	private final GamePlay playerMetrics;
+	private int width = Constraints.levelWidth;
+	private int lives = 3;
+	private boolean endurance = false;
+	private int chunkSize = 32;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	public BatchEvaluator(GamePlay playerMetrics) {
+		this.playerMetrics = playerMetrics;
+	}
+
+	public void setWidth(int width) {
+		this.width = width;
+	}
+
+	/**
+	 * Plays streaming RandomLevels of the width instead of MyLevels, with
+	 * the time limit scaled to the width
+	 */
+	public void setEndurance(boolean endurance) {
+		this.endurance = endurance;
+	}
+
+	public void setLives(int lives) {
+		this.lives = lives;
+	}
+
+	/**
+	 * Number of consecutive seeds a worker evaluates before it writes them out
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Evaluates count seeds starting at firstSeed and writes the results to
+	 * out. Blocks until every seed has been evaluated.
+	 */
+	public void evaluate(long firstSeed, long count, File out) throws IOException {
+		Level.initBehaviors();
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out), 1 << 16));
+		try {
+			dos.writeInt(MAGIC);
+			dos.writeLong(firstSeed);
+			dos.writeLong(count);
+
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new Batch(firstSeed, firstSeed + count, dos));
+			} finally {
+				pool.shutdown();
+			}
+		} finally {
+			dos.close();
+		}
+	}
+
+	/**
+	 * Generates and plays a single seed on the calling thread
+	 */
+	public Result evaluate(long seed) {
+		Result result = new Result();
+		result.seed = seed;
+
+		Level level;
+		if (endurance) {
+			level = RandomLevel.streaming(width, 15, seed, 1, LevelInterface.TYPE_OVERGROUND);
+		} else {
+			level = new MyLevel(width, 15, seed, 1, LevelInterface.TYPE_OVERGROUND,
+					playerMetrics, new HashMap<Configuration, Integer>());
+			result.valid = ConstraintsChecker.check(level);
+		}
+
+		HeadlessLevelScene scene = new HeadlessLevelScene(level, new WorldContext(seed));
+		scene.context.lives = lives;
+		if (endurance)
+			scene.setTimeLimit(200 * 15 * Math.max(1, width / Constraints.levelWidth));
+		scene.init();
+		scene.setAgent(new ScriptedAgent(), new Observation(22, 32, 64));
+
+		// The level timer kills mario after 200 game seconds, so every
+		// attempt is bounded and the loop always ends
+		while (!scene.isFinished())
+			scene.tick();
+
+		result.completed = scene.hasWon();
+		result.ticks = scene.getTicksRun();
+		result.deathPositions = scene.getDeathPositions();
+		return result;
+	}
+
+	/**
+	 * Runs right and jumps at walls, gaps and enemies. Jump is held until
+	 * mario starts falling, for the full height, then released so that the
+	 * next jump can trigger.
+	 */
+	private static class ScriptedAgent implements Agent {
+
+		private static final byte RUN = (byte) (1 << Mario.KEY_RIGHT | 1 << Mario.KEY_SPEED);
+		private static final byte JUMP = (byte) (1 << Mario.KEY_JUMP);
+
+		private boolean jumping;
+		// Ticks jump has been held
+		private int held;
+
+		public byte act(Observation o) {
+			int x = (int) o.marioX / 16;
+			int y = (int) o.marioY / 16;
+
+			boolean wall = false;
+			for (int ahead = 1; ahead <= 3; ahead++)
+				wall |= o.isBlocking(x + ahead, y, 0) || o.isBlocking(x + ahead, y - 1, 0);
+			boolean gap = isGap(o, x + 1, y) || isGap(o, x + 2, y);
+
+			if (jumping) {
+				// Mario is still on the ground the tick after jump is pressed
+				jumping = ++held < 2 || (!o.onGround && o.marioYa <= 0);
+			} else if (!o.onGround) {
+				// Brake rather than come down on a spiky
+				if (landsOnSpiky(o))
+					return (byte) (1 << Mario.KEY_LEFT);
+			} else if (flowerAhead(o)) {
+				return o.marioXa > 1 ? (byte) (1 << Mario.KEY_LEFT) : 0;
+			} else if (o.mayJump && (wall || gap || enemyAhead(o, 128))) {
+				jumping = true;
+				held = 0;
+			}
+			return jumping ? (byte) (RUN | JUMP) : RUN;
+		}
+
+		/**
+		 * @return true if there is nothing below (x, y) down to the bottom
+		 *         of the window, which reaches the bottom of the level
+		 */
+		private static boolean isGap(Observation o, int x, int y) {
+			for (int yy = y + 1; yy < o.originY + o.height; yy++) {
+				if (o.getTile(x, yy) != 0)
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Follows mario's fall, holding right, until he hits something.
+		 * 
+		 * @return true if a spiky is within two tiles of where he lands
+		 */
+		private static boolean landsOnSpiky(Observation o) {
+			float x = o.marioX, y = o.marioY;
+			float xa = o.marioXa, ya = o.marioYa;
+			for (int t = 0; t < 40; t++) {
+				x += xa;
+				y += ya;
+				xa = xa * 0.89f + 1.2f;
+				ya = ya * 0.85f + 3;
+				if ((int) y / 16 >= o.originY + o.height)
+					return false;
+				if (!o.isBlocking((int) x / 16, (int) y / 16, 1))
+					continue;
+				for (int i = 0; i < o.enemies; i++) {
+					if (o.enemyKind[i] == Enemy.ENEMY_SPIKY && Math.abs(o.enemyX[i] - x) < 32 && Math.abs(o.enemyY[i] - y) < 24)
+						return true;
+				}
+				return false;
+			}
+			return false;
+		}
+
+		/**
+		 * @return true if a flower, which has the spiky type, is out of its
+		 *         pipe just in front of mario
+		 */
+		private static boolean flowerAhead(Observation o) {
+			for (int i = 0; i < o.enemies; i++) {
+				float d = o.enemyX[i] - o.marioX;
+				if (o.enemyKind[i] != Enemy.ENEMY_SPIKY || d <= -8 || d >= 128)
+					continue;
+				int ex = (int) o.enemyX[i] / 16;
+				for (int yy = (int) (o.enemyY[i] - 16) / 16; yy < (int) o.enemyY[i] / 16 + 6; yy++) {
+					int tile = o.getTile(ex, yy) & 0xff;
+					if (tile == 10 || tile == 11)
+						return o.enemyY[i] < yy * 16 + 20;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return true if an enemy is less than range pixels in front of mario
+		 *         and roughly at the same height
+		 */
+		private static boolean enemyAhead(Observation o, float range) {
+			for (int i = 0; i < o.enemies; i++) {
+				if (o.enemyX[i] > o.marioX && o.enemyX[i] - o.marioX < range && Math.abs(o.enemyY[i] - o.marioY) < 32)
+					return true;
+			}
+			return false;
+		}
+	}
+
+	public static class Result {
+		public long seed;
+		public boolean valid;
+		public boolean completed;
+		public int ticks;
+		public int[] deathPositions;
+
+		public void write(DataOutputStream dos) throws IOException {
+			int deaths = Math.min(deathPositions.length, 255);
+			dos.writeLong(seed);
+			dos.writeByte((valid ? FLAG_VALID : 0) | (completed ? FLAG_COMPLETED : 0));
+			dos.writeInt(ticks);
+			dos.writeByte(deaths);
+			for (int i = 0; i < deaths; i++)
+				dos.writeShort(deathPositions[i]);
+		}
+
+		public static Result read(DataInputStream dis) throws IOException {
+			Result result = new Result();
+			result.seed = dis.readLong();
+			int flags = dis.readUnsignedByte();
+			result.valid = (flags & FLAG_VALID) != 0;
+			result.completed = (flags & FLAG_COMPLETED) != 0;
+			result.ticks = dis.readInt();
+			result.deathPositions = new int[dis.readUnsignedByte()];
+			for (int i = 0; i < result.deathPositions.length; i++)
+				result.deathPositions[i] = dis.readUnsignedShort();
+			return result;
+		}
+	}
+
+	/**
+	 * Splits the seed range in half until it is at most chunkSize long, then
+	 * evaluates it and appends the encoded records to the shared output in
+	 * one write.
+	 */
+	private class Batch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final long from, to;
+		private final OutputStream out;
+
+		Batch(long from, long to, OutputStream out) {
+			this.from = from;
+			this.to = to;
+			this.out = out;
+		}
+
+		protected void compute() {
+			if (to - from > chunkSize) {
+				long mid = from + (to - from) / 2;
+				invokeAll(new Batch(from, mid, out), new Batch(mid, to, out));
+				return;
+			}
+
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) (to - from) * 16);
+			DataOutputStream dos = new DataOutputStream(buffer);
+			try {
+				for (long seed = from; seed < to; seed++)
+					evaluate(seed).write(dos);
+				synchronized (out) {
+					buffer.writeTo(out);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Usage: BatchEvaluator [-endurance width] firstSeed count output [player.txt]
+	 */
+	public static void main(String[] args) throws IOException {
+		int endurance = 0;
+		if (args.length > 1 && args[0].equals("-endurance")) {
+			endurance = Integer.parseInt(args[1]);
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		if (args.length < 3) {
+			System.err.println("Usage: BatchEvaluator [-endurance width] firstSeed count output [player.txt]");
+			System.exit(1);
+		}
+
+		GamePlay playerMetrics = args.length > 3 ? GamePlay.read(args[3]) : new GamePlay();
+		long firstSeed = Long.parseLong(args[0]);
+		long count = Long.parseLong(args[1]);
+
+		BatchEvaluator evaluator = new BatchEvaluator(playerMetrics);
+		if (endurance > 0) {
+			evaluator.setEndurance(true);
+			evaluator.setWidth(endurance);
+		}
+
+		long start = System.currentTimeMillis();
+		evaluator.evaluate(firstSeed, count, new File(args[2]));
+		System.out.println("Evaluated " + count + " levels in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
@@ -1,7 +1,6 @@
 package dk.itu.mario.engine;
 
 import java.awt.*;
-import java.util.Random;
 
 
 import dk.itu.mario.level.Level;
@@ -16,7 +15,6 @@ public class BgRenderer
     private static final Color transparent = new Color(0, 0, 0, 0);
     private Level level;
 
-    private Random random = new Random();
     public boolean renderBehaviors = false;
 
     private int width;
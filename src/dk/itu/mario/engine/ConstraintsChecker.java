@@ -25,12 +25,12 @@ public final class ConstraintsChecker {
 
 		//check the number of TURTLES
 		int tur = 0;
-		for (int i = 0; i < level.getSpriteTemplate().length; i++) {
+		for (int i = 0; i < level.getWidth(); i++) {
 
-				SpriteTemplate[] st = (SpriteTemplate[])level.getSpriteTemplate()[i];
-				for (int j = 0; j < st.length; j++) {
-					if(st[j]!=null){
-						int t = ((SpriteTemplate)st[j]).type;
+				for (int j = 0; j < level.getHeight(); j++) {
+					SpriteTemplate st = level.getSpriteTemplate(i, j);
+					if(st!=null){
+						int t = st.type;
 						if(t== SpriteTemplate.RED_TURTLE || t == SpriteTemplate.GREEN_TURTLE || t == SpriteTemplate.ARMORED_TURTLE)
 							tur++;
 					}
@@ -1,8 +1,11 @@
 package dk.itu.mario.engine;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 
 import dk.itu.mario.MarioInterface.GamePlay;
 import dk.itu.mario.engine.sprites.SpriteTemplate;
@@ -104,10 +107,42 @@ public class DataRecorder {
 	private int switchedPower = 0;
 
 	private boolean levelWon;
-	public String detailedLog = "";
 
+	/**
+	 * The detailed log of every attempt at the level. DetailedInfo.txt is
+	 * exported from it and only holds the current attempt.
+	 */
+	private EventLog events;
+
+	/**
+	 * @return the text of DetailedInfo.txt for the current attempt
+	 */
 	public String getDetailedLog(){
-		return detailedLog;
+		StringWriter text = new StringWriter();
+		if(events != null){
+			try {
+				events.exportAttempt(new DetailedLogExporter(text));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Starts the detailed log of a new attempt
+	 */
+	public void resetDetailedLog(){
+		if(events != null)
+			events.newAttempt();
+	}
+
+	/**
+	 * Writes out the event log, nothing is recorded after this
+	 */
+	public void close(){
+		if(events != null)
+			events.close();
 	}
 	
 	
@@ -117,6 +152,12 @@ public class DataRecorder {
 		this.keys = keys;
 
 		keyPressed = new boolean[keys.length];
+
+		try {
+			events = new EventLog(new File("DetailedInfo.bin"));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		
 		reset();
 		fillGamePlayMetrics((MyLevel)level);
@@ -211,8 +252,7 @@ public class DataRecorder {
 		if(timeStopped == true){
 			timeStopped = false;
 			timeStart = 2982 - levelScene.timeLeft;
-			detailedLog += "StartTime = "+ timeStart;
-			detailedLog += "\n";
+			logEvent(EventLog.START_TIME, timeStart, 0);
 		}
 	}
 
@@ -227,8 +267,7 @@ public class DataRecorder {
 			totalTime += timeEnd-timeStart;
 
 			completionTime = timeEnd-timeStart;
-			detailedLog += "Totaltime = "+completionTime;
-			detailedLog += "\n";
+			logEvent(EventLog.TOTAL_TIME, timeEnd, completionTime);
 		}
 	}
 
@@ -260,15 +299,15 @@ public class DataRecorder {
 				endDuckRecord();
 			}
 
-			if(Mario.large && !Mario.fire){
+			if(levelScene.mario.large && !levelScene.mario.fire){
 				endLargeRecord();
 			}
 
-			if(Mario.fire){
+			if(levelScene.mario.fire){
 				endFireRecord();
 			}
 
-			if(!Mario.fire && !Mario.large){
+			if(!levelScene.mario.fire && !levelScene.mario.large){
 				endLittleRecord();
 			}
 		}
@@ -288,16 +327,14 @@ public class DataRecorder {
 		endRightTime = 2982 - levelScene.timeLeft;
 
 		totalRightTime += endRightTime - startRightTime;
-		detailedLog += "RightMove: StTime = "+startRightTime +" EdTime = "+totalRightTime;
-		detailedLog += "\n";
+		logEvent(EventLog.RIGHT_MOVE, startRightTime, totalRightTime);
 	}
 
 	public void endLeftMoveRecord(){
 		endLeftTime = 2982 - levelScene.timeLeft;
 
 		totalLeftTime += endLeftTime - startLeftTime;
-		detailedLog += "LeftMove: StTime = "+startLeftTime +" EdTime = "+totalLeftTime;
-		detailedLog += "\n";
+		logEvent(EventLog.LEFT_MOVE, startLeftTime, totalLeftTime);
 
 	}
 
@@ -321,8 +358,7 @@ public class DataRecorder {
 			
 			//System.out.println("END DUCK");
 			
-			detailedLog += "Duck: StTime = "+startDuckTime +" EdTime = "+endDuckTime;
-			detailedLog += "\n";
+			logEvent(EventLog.DUCK, startDuckTime, endDuckTime);
 
 		}
 	}
@@ -355,8 +391,7 @@ public class DataRecorder {
 			//System.out.println("LITTLE END: "+endLittleTime);
 			//System.out.println("TOTAL LITTLE END: " + totalLittleTime);
 			//System.out.println("LITTLE END: "+endLittleTime);
-			detailedLog += "LittleState: StTime = "+startLittleTime +" EdTime = "+endLittleTime;
-			detailedLog += "\n";
+			logEvent(EventLog.LITTLE_STATE, startLittleTime, endLittleTime);
 		}
 	}
 
@@ -377,8 +412,7 @@ public class DataRecorder {
 
 		//System.out.println("LARGE END");
 		
-		detailedLog += "LargeState: StTime = "+startLargeTime +" EdTime = "+endLargeTime;
-		detailedLog += "\n";
+		logEvent(EventLog.LARGE_STATE, startLargeTime, endLargeTime);
 		
 	
 	}
@@ -399,8 +433,7 @@ public class DataRecorder {
 		totalFireTime += endFireTime - startFireTime;
 
 		//System.out.println("FIRE END");
-		detailedLog += "FireState: StTime = "+startFireTime +" EdTime = "+endFireTime;
-		detailedLog += "\n";
+		logEvent(EventLog.FIRE_STATE, startFireTime, endFireTime);
 	}
 
 	public void startRunningRecord(){
@@ -422,8 +455,7 @@ public class DataRecorder {
 
 			totalRunTime += endRunTime - startRunTime;
 			
-			detailedLog += "RunState: StTime = "+startRunTime +" EdTime = "+endRunTime;
-			detailedLog += "\n";			
+			logEvent(EventLog.RUN_STATE, startRunTime, endRunTime);			
 			
 		}
 	}
@@ -432,8 +464,7 @@ public class DataRecorder {
 		killRecord(sprite);
 		int enemyType = 0;
 		if(sprite instanceof FlowerEnemy){
-			detailedLog += "FireKill:  EnemyType = FlowerEnemy  time = "+ (2982 - levelScene.timeLeft);
-			detailedLog += "\n";		
+			logEvent(EventLog.FIRE_KILL, 2982 - levelScene.timeLeft, EventLog.ENEMY_FLOWER);		
 		}
 		else if(sprite instanceof BulletBill){// cannon shot
 		}
@@ -441,8 +472,7 @@ public class DataRecorder {
 		}
 		else if(sprite instanceof Enemy){
 			Enemy enemy = (Enemy)sprite;
-			detailedLog += "FireKill:  EnemyType ="+ enemy.type +"time = "+ (2982 - levelScene.timeLeft);
-			detailedLog += "\n";	
+			logEvent(EventLog.FIRE_KILL, 2982 - levelScene.timeLeft, enemy.type);	
 		}
 		fireKills++;
 		//System.out.println(" fire kill ");
@@ -451,19 +481,16 @@ public class DataRecorder {
 	public void shellKillRecord(Sprite sprite){
 		killRecord(sprite);
 		if(sprite instanceof FlowerEnemy){
-			detailedLog += "ShellKill:  EnemyType = FlowerEnemy time = "+ (2982 - levelScene.timeLeft);
-			detailedLog += "\n";	
+			logEvent(EventLog.SHELL_KILL, 2982 - levelScene.timeLeft, EventLog.ENEMY_FLOWER);	
 		}
 		else if(sprite instanceof BulletBill){//cannon shot
 		}
 		else if(sprite instanceof Shell){
-			detailedLog += "ShellKill:  EnemyType = Turtle time = "+ (2982 - levelScene.timeLeft);
-			detailedLog += "\n";	
+			logEvent(EventLog.SHELL_KILL, 2982 - levelScene.timeLeft, EventLog.ENEMY_SHELL);	
 		}
 		else if(sprite instanceof Enemy){
 			Enemy enemy = (Enemy)sprite;
-			detailedLog += "ShellKill:  EnemyType = "+enemy.type+" time = "+ (2982 - levelScene.timeLeft);
-			detailedLog += "\n";	
+			logEvent(EventLog.SHELL_KILL, 2982 - levelScene.timeLeft, enemy.type);	
 		}
 		
 		shellKills++;
@@ -479,21 +506,18 @@ public class DataRecorder {
 	public void killStompRecord(Sprite sprite){
 		killRecord(sprite);
 		if(sprite instanceof FlowerEnemy){
-			detailedLog += "StompKill:  EnemyType = FlowerEnemy time = "+ (2982 - levelScene.timeLeft);
-			detailedLog += "\n";	
+			logEvent(EventLog.STOMP_KILL, 2982 - levelScene.timeLeft, EventLog.ENEMY_FLOWER);	
 			
 		}
 		else if(sprite instanceof BulletBill){// cannon shot
-			detailedLog += "StompKill:  EnemyType = BulletBill time = "+ (2982 - levelScene.timeLeft);
-			detailedLog += "\n";				
+			logEvent(EventLog.STOMP_KILL, 2982 - levelScene.timeLeft, EventLog.ENEMY_BULLET_BILL);				
 		}
 		else if(sprite instanceof Shell){
 //			levelScene.levelRecorder.enemyR.interact.add(new DataEntry(EnemyRecorder.GREEN_TURTLE, EnemyRecorder.UNLEASHED, 2982 - levelScene.timeLeft,x,y));
 					}
 		else if(sprite instanceof Enemy){
 			Enemy enemy = (Enemy)sprite;
-			detailedLog += "StompKill:  EnemyType = "+enemy.type+" time = "+ (2982 - levelScene.timeLeft);
-			detailedLog += "\n";	
+			logEvent(EventLog.STOMP_KILL, 2982 - levelScene.timeLeft, enemy.type);	
 			
 		}
 		stompKills++;
@@ -527,39 +551,33 @@ public class DataRecorder {
 	}
 
 	public void blockCoinDestroyRecord(){
-		detailedLog += "BlockCoinDestroy:  time = "+ (2982 - levelScene.timeLeft);
-		detailedLog += "\n";	
+		logEvent(EventLog.BLOCK_COIN_DESTROY, 2982 - levelScene.timeLeft, 0);	
 		blocksCoinDestroyed++;
 	}
 
 	public void blockPowerDestroyRecord(){
-		detailedLog += "BlockPowerDestroy:  time = "+ (2982 - levelScene.timeLeft);
-		detailedLog += "\n";	
+		logEvent(EventLog.BLOCK_POWER_DESTROY, 2982 - levelScene.timeLeft, 0);	
 		blocksPowerDestroyed++;
 	}
 
 	public void dieRecord(Sprite sprite){
 		if(sprite instanceof FlowerEnemy){
-			detailedLog += "Die:  EnemyType = FlowerEnemy ";
-			detailedLog += "\n";	
+			logEvent(EventLog.DIE, 2982 - levelScene.timeLeft, EventLog.ENEMY_FLOWER);	
 			deaths[SpriteTemplate.JUMP_FLOWER]++;
 		}
 		else if(sprite instanceof BulletBill){
-			detailedLog += "Die:  EnemyType = BulletBill ";
-			detailedLog += "\n";
+			logEvent(EventLog.DIE, 2982 - levelScene.timeLeft, EventLog.ENEMY_BULLET_BILL);
 			deaths[5]++;
 		}
 		else if(sprite instanceof Shell){
 			//not sure what to do with shells
-			detailedLog += "Die:  EnemyType = TurtleShell ";
-			detailedLog += "\n";
+			logEvent(EventLog.DIE, 2982 - levelScene.timeLeft, EventLog.ENEMY_SHELL);
 			deaths[9]++;
 		}
 		else if(sprite instanceof Enemy){
 			Enemy enemy = (Enemy)sprite;
 			deaths[enemy.type]++;
-			detailedLog += "Die:  EnemyType = "+enemy.type;
-			detailedLog += "\n";
+			logEvent(EventLog.DIE, 2982 - levelScene.timeLeft, enemy.type);
 			
 		}
 
@@ -575,16 +593,14 @@ public class DataRecorder {
 	public void dieJumpRecord(){
 		//jump
 		deaths[8]++;
-		detailedLog += "Die:  Gap ";
-		detailedLog += "\n";
+		logEvent(EventLog.DIE_GAP, 2982 - levelScene.timeLeft, 0);
 
 	}
 
 	public void shellUnleashedRecord(){
 		shellsUnleashed++;
 		//System.out.println(" shell unleased");
-		detailedLog += "UnleashShell:  time = "+ (2982 - levelScene.timeLeft);
-		detailedLog += "\n";
+		logEvent(EventLog.UNLEASH_SHELL, 2982 - levelScene.timeLeft, 0);
 	}
 
 	private void keysRecord(){
@@ -610,14 +626,12 @@ public class DataRecorder {
 
 			totalJumpTime += endJumpTime - startJumpTime;
 				
-			detailedLog += "Jump:  StTime = "+ startJumpTime +" EdTime = "+endJumpTime;
-			detailedLog += "\n";
+			logEvent(EventLog.JUMP, startJumpTime, endJumpTime);
 		}
 	}
 
 	public void recordCoin(){
-		detailedLog += "CollectCoin:  time = "+ (2982 - levelScene.timeLeft);
-		detailedLog += "\n";
+		logEvent(EventLog.COLLECT_COIN, 2982 - levelScene.timeLeft, 0);
 		collectedCoins++;
 	}
 
@@ -842,18 +856,26 @@ public class DataRecorder {
 		gpm.CannonBallKilled = kills[SpriteTemplate.CANNON_BALL];
 		gpm.ChompFlowersKilled = kills[SpriteTemplate.CHOMP_FLOWER];
 		gpm.write("player.txt");
-		//System.out.println(detailedLog);
-		write(detailedLog);
+		writeDetailedLog();
 		
 	}
 
 
 
-	private void write(String detailedLog2) {
+	/**
+	 * Exports the current attempt to DetailedInfo.txt, streaming it from the
+	 * event log
+	 */
+	private void writeDetailedLog() {
+		if(events == null)
+			return;
 		try {
-			FileWriter file = new FileWriter(new File("DetailedInfo.txt"));
-			file.write(detailedLog);
-			file.close();
+			Writer file = new BufferedWriter(new FileWriter(new File("DetailedInfo.txt")));
+			try {
+				events.exportAttempt(new DetailedLogExporter(file));
+			} finally {
+				file.close();
+			}
 		} catch (IOException e) {
 			
 			e.printStackTrace();
@@ -861,6 +883,11 @@ public class DataRecorder {
 		
 	}
 
+	private void logEvent(int id, int time, int payload){
+		if(events != null)
+			events.log(id, time, (int)levelScene.mario.x, (int)levelScene.mario.y, payload);
+	}
+
 	public int getCompletionTime(){
 		return convertTime(completionTime);
 	}
@@ -0,0 +1,103 @@
+package dk.itu.mario.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Turns EventLog events into the lines of DetailedInfo.txt, the format that
+ * DataRecorder used to build as one string.
+ */
+public class DetailedLogExporter implements EventLog.Sink {
+
+	private final Writer out;
+
+	public DetailedLogExporter(Writer out) {
+		this.out = out;
+	}
+
+	public void event(int id, int time, int x, int y, int payload) throws IOException {
+		switch (id) {
+		case EventLog.START_TIME:
+			out.write("StartTime = " + time);
+			break;
+		case EventLog.TOTAL_TIME:
+			out.write("Totaltime = " + payload);
+			break;
+		case EventLog.RIGHT_MOVE:
+			out.write("RightMove: StTime = " + time + " EdTime = " + payload);
+			break;
+		case EventLog.LEFT_MOVE:
+			out.write("LeftMove: StTime = " + time + " EdTime = " + payload);
+			break;
+		case EventLog.DUCK:
+			out.write("Duck: StTime = " + time + " EdTime = " + payload);
+			break;
+		case EventLog.LITTLE_STATE:
+			out.write("LittleState: StTime = " + time + " EdTime = " + payload);
+			break;
+		case EventLog.LARGE_STATE:
+			out.write("LargeState: StTime = " + time + " EdTime = " + payload);
+			break;
+		case EventLog.FIRE_STATE:
+			out.write("FireState: StTime = " + time + " EdTime = " + payload);
+			break;
+		case EventLog.RUN_STATE:
+			out.write("RunState: StTime = " + time + " EdTime = " + payload);
+			break;
+		case EventLog.FIRE_KILL:
+			if (payload == EventLog.ENEMY_FLOWER)
+				out.write("FireKill:  EnemyType = FlowerEnemy  time = " + time);
+			else
+				out.write("FireKill:  EnemyType =" + payload + "time = " + time);
+			break;
+		case EventLog.SHELL_KILL:
+			out.write("ShellKill:  EnemyType = " + enemyName(payload) + " time = " + time);
+			break;
+		case EventLog.STOMP_KILL:
+			out.write("StompKill:  EnemyType = " + enemyName(payload) + " time = " + time);
+			break;
+		case EventLog.BLOCK_COIN_DESTROY:
+			out.write("BlockCoinDestroy:  time = " + time);
+			break;
+		case EventLog.BLOCK_POWER_DESTROY:
+			out.write("BlockPowerDestroy:  time = " + time);
+			break;
+		case EventLog.DIE:
+			if (payload == EventLog.ENEMY_SHELL)
+				out.write("Die:  EnemyType = TurtleShell ");
+			else if (payload < 0)
+				out.write("Die:  EnemyType = " + enemyName(payload) + " ");
+			else
+				out.write("Die:  EnemyType = " + payload);
+			break;
+		case EventLog.DIE_GAP:
+			out.write("Die:  Gap ");
+			break;
+		case EventLog.UNLEASH_SHELL:
+			out.write("UnleashShell:  time = " + time);
+			break;
+		case EventLog.JUMP:
+			out.write("Jump:  StTime = " + time + " EdTime = " + payload);
+			break;
+		case EventLog.COLLECT_COIN:
+			out.write("CollectCoin:  time = " + time);
+			break;
+		default:
+			return;
+		}
+		out.write("\n");
+	}
+
+	private static String enemyName(int payload) {
+		switch (payload) {
+		case EventLog.ENEMY_FLOWER:
+			return "FlowerEnemy";
+		case EventLog.ENEMY_BULLET_BILL:
+			return "BulletBill";
+		case EventLog.ENEMY_SHELL:
+			return "Turtle";
+		default:
+			return Integer.toString(payload);
+		}
+	}
+}
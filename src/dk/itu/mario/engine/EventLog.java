@@ -0,0 +1,151 @@
+package dk.itu.mario.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Append-only binary log of gameplay events. Every event is a fixed size
+ * record
+ *
+ *   byte  event id
+ *   int   time, in the ticks DataRecorder counts
+ *   short mario x, in pixels
+ *   short mario y, in pixels
+ *   int   payload, depends on the event
+ *
+ * written through a small buffer, so memory use does not grow with the
+ * length of the session. Readers get the events back one at a time through
+ * a Sink, which is how the text of DetailedInfo.txt is made.
+ */
+public class EventLog {
+
+	public static final int RECORD_SIZE = 13;
+
+	public static final int START_TIME = 1; // payload unused
+	public static final int TOTAL_TIME = 2; // payload is the completion time
+	public static final int RIGHT_MOVE = 3; // time is the start, payload the total time moving right
+	public static final int LEFT_MOVE = 4; // time is the start, payload the total time moving left
+	public static final int DUCK = 5; // time is the start, payload the end
+	public static final int LITTLE_STATE = 6; // time is the start, payload the end
+	public static final int LARGE_STATE = 7; // time is the start, payload the end
+	public static final int FIRE_STATE = 8; // time is the start, payload the end
+	public static final int RUN_STATE = 9; // time is the start, payload the end
+	public static final int FIRE_KILL = 10; // payload is the enemy
+	public static final int SHELL_KILL = 11; // payload is the enemy
+	public static final int STOMP_KILL = 12; // payload is the enemy
+	public static final int BLOCK_COIN_DESTROY = 13;
+	public static final int BLOCK_POWER_DESTROY = 14;
+	public static final int DIE = 15; // payload is the enemy
+	public static final int DIE_GAP = 16;
+	public static final int UNLEASH_SHELL = 17;
+	public static final int JUMP = 18; // time is the start, payload the end
+	public static final int COLLECT_COIN = 19;
+
+	// Enemy payloads for sprites that are not an Enemy type, the rest use
+	// Enemy.type
+	public static final int ENEMY_FLOWER = -1;
+	public static final int ENEMY_BULLET_BILL = -2;
+	public static final int ENEMY_SHELL = -3;
+
+	public interface Sink {
+		public void event(int id, int time, int x, int y, int payload) throws IOException;
+	}
+
+	private final File file;
+	private DataOutputStream out;
+	private long size;
+	private long attemptStart;
+
+	/**
+	 * Creates an empty log in file, replacing what was there
+	 */
+	public EventLog(File file) throws IOException {
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 13));
+	}
+
+	public void log(int id, int time, int x, int y, int payload) {
+		if (out == null)
+			return;
+		try {
+			out.writeByte(id);
+			out.writeInt(time);
+			out.writeShort(x);
+			out.writeShort(y);
+			out.writeInt(payload);
+			size += RECORD_SIZE;
+		} catch (IOException e) {
+			e.printStackTrace();
+			close();
+		}
+	}
+
+	/**
+	 * Starts a new attempt at the level. The events before it stay in the
+	 * file but are no longer part of exportAttempt.
+	 */
+	public void newAttempt() {
+		attemptStart = size;
+	}
+
+	/**
+	 * Streams the events of the current attempt to sink, oldest first
+	 */
+	public void exportAttempt(Sink sink) throws IOException {
+		export(attemptStart, sink);
+	}
+
+	/**
+	 * Streams every event in the log to sink, oldest first
+	 */
+	public void exportAll(Sink sink) throws IOException {
+		export(0, sink);
+	}
+
+	private void export(long from, Sink sink) throws IOException {
+		if (out != null)
+			out.flush();
+		long end = size;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 13));
+		try {
+			long skipped = 0;
+			while (skipped < from) {
+				long n = in.skip(from - skipped);
+				if (n <= 0)
+					throw new EOFException();
+				skipped += n;
+			}
+			for (long at = from; at < end; at += RECORD_SIZE) {
+				int id = in.readUnsignedByte();
+				int time = in.readInt();
+				int x = in.readShort();
+				int y = in.readShort();
+				sink.event(id, time, x, y, in.readInt());
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes out what is still buffered and stops logging
+	 */
+	public void close() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+}
@@ -0,0 +1,102 @@
+package dk.itu.mario.engine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs ticks at a fixed rate from a nanosecond clock. After a stall at
+ * most maxCatchUp ticks are run at once and the rest of the missed time is
+ * skipped, so the game slows down for a moment instead of spiralling.
+ * Waits park the thread until shortly before the deadline and yield for
+ * the rest, which is both cheap and accurate to well below a millisecond.
+ */
+public class FixedStepScheduler implements TickScheduler
+{
+    // Waits shorter than this are not parked, the wake up is not accurate enough
+    private static final long SPIN_NANOS = 500000;
+
+    private final long tickNanos;
+    private final long frameNanos;
+    private final int maxCatchUp;
+
+    private TimingStats stats;
+
+    // Time of tick 0. Moves forward when ticks are skipped.
+    private volatile long origin;
+    private int ticks;
+    private long nextFrame;
+
+    /**
+     * @param ticksPerSecond the rate of the simulation
+     * @param framesPerSecond the most frames to draw in a second
+     * @param maxCatchUp the most ticks to run back to back after a stall
+     */
+    public FixedStepScheduler(int ticksPerSecond, int framesPerSecond, int maxCatchUp)
+    {
+        if (maxCatchUp < 1)
+            throw new IllegalArgumentException("maxCatchUp has to be at least 1");
+        this.tickNanos = 1000000000L / ticksPerSecond;
+        this.frameNanos = 1000000000L / framesPerSecond;
+        this.maxCatchUp = maxCatchUp;
+    }
+
+    public void start(TimingStats stats)
+    {
+        this.stats = stats;
+        ticks = 0;
+        origin = System.nanoTime();
+        nextFrame = origin;
+    }
+
+    public int ticksDue()
+    {
+        long due = (System.nanoTime() - origin) / tickNanos - ticks;
+        if (due <= 0) return 0;
+
+        if (due > maxCatchUp)
+        {
+            long skipped = due - maxCatchUp;
+            origin += skipped * tickNanos;
+            stats.ticksSkipped(skipped);
+            due = maxCatchUp;
+        }
+        ticks += (int) due;
+        return (int) due;
+    }
+
+    public void awaitNextTick() throws InterruptedException
+    {
+        waitUntil(origin + (ticks + 1) * tickNanos);
+    }
+
+    public void awaitNextFrame() throws InterruptedException
+    {
+        long now = System.nanoTime();
+        // Do not try to make up for frames that were late
+        if (nextFrame < now - frameNanos) nextFrame = now;
+        nextFrame += frameNanos;
+        waitUntil(nextFrame);
+    }
+
+    public float alpha(int tick)
+    {
+        float alpha = (System.nanoTime() - (origin + tick * tickNanos)) / (float) tickNanos;
+        if (alpha < 0) return 0;
+        if (alpha > 1) return 1;
+        return alpha;
+    }
+
+    private static void waitUntil(long deadline) throws InterruptedException
+    {
+        while (true)
+        {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+            if (Thread.interrupted()) throw new InterruptedException();
+
+            if (remaining > SPIN_NANOS)
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            else
+                Thread.yield();
+        }
+    }
+}
@@ -1,22 +1,35 @@
 package dk.itu.mario.engine;
 
 import java.awt.*;
-import java.util.Random;
-
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 import dk.itu.mario.level.Level;
 
 
+/**
+ * Draws the static tiles of a level into an ARGB frame buffer that follows
+ * the camera. Tiles are copied straight from Art.levelTiles into the pixels
+ * of the buffer, so the cost of a frame only depends on how far the camera
+ * moved. Scrolling moves the pixels that stay visible and marks the tile
+ * columns that came into view as dirty; render() redraws the dirty columns
+ * before the buffer is drawn. Animated tiles are left transparent and drawn
+ * on top every frame.
+ */
 public class LevelRenderer
 {
     private int xCam;
     private int yCam;
-    private Image image;
-    private Graphics2D g;
-    private static final Color transparent = new Color(0, 0, 0, 0);
+    private BufferedImage image;
+    private int[] pixels;
     private Level level;
 
-    private Random random = new Random();
+    // Range of level tile columns that have to be redrawn, empty if
+    // dirtyTo < dirtyFrom
+    private int dirtyFrom = 0;
+    private int dirtyTo = -1;
+
     public boolean renderBehaviors = false;
 
     public int width;
@@ -28,9 +41,8 @@ public class LevelRenderer
         this.height = height;
 
         this.level = level;
-        image = graphicsConfiguration.createCompatibleImage(width, height, Transparency.BITMASK);
-        g = (Graphics2D) image.getGraphics();
-        g.setComposite(AlphaComposite.Src);
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
 
         updateArea(0, 0, width, height);
     }
@@ -42,55 +54,95 @@ public class LevelRenderer
         this.xCam = xCam;
         this.yCam = yCam;
 
-        g.setComposite(AlphaComposite.Src);
-        g.copyArea(0, 0, width, height, xCamD, yCamD);
+        if (yCamD != 0 || xCamD <= -width || xCamD >= width)
+        {
+            updateArea(0, 0, width, height);
+            return;
+        }
 
         if (xCamD < 0)
         {
-            if (xCamD < -width) xCamD = -width;
+            for (int y = 0; y < height; y++)
+                System.arraycopy(pixels, y * width - xCamD, pixels, y * width, width + xCamD);
             updateArea(width + xCamD, 0, -xCamD, height);
         }
         else if (xCamD > 0)
         {
-            if (xCamD > width) xCamD = width;
+            for (int y = 0; y < height; y++)
+                System.arraycopy(pixels, y * width, pixels, y * width + xCamD, width - xCamD);
             updateArea(0, 0, xCamD, height);
         }
+    }
 
-        if (yCamD < 0)
+    /**
+     * Marks the tile columns that cover the given pixels of the buffer as
+     * dirty. Columns are always redrawn from top to bottom.
+     */
+    private void updateArea(int x0, int y0, int w, int h)
+    {
+        if (w <= 0 || h <= 0) return;
+        int xTileStart = (x0 + xCam) >> 4;
+        int xTileEnd = (x0 + xCam + w - 1) >> 4;
+        if (dirtyTo < dirtyFrom)
         {
-            if (yCamD < -width) yCamD = -width;
-            updateArea(0, height + yCamD, width, -yCamD);
+            dirtyFrom = xTileStart;
+            dirtyTo = xTileEnd;
         }
-        else if (yCamD > 0)
+        else
         {
-            if (yCamD > width) yCamD = width;
-            updateArea(0, 0, width, yCamD);
+            dirtyFrom = Math.min(dirtyFrom, xTileStart);
+            dirtyTo = Math.max(dirtyTo, xTileEnd);
         }
     }
 
-    private void updateArea(int x0, int y0, int w, int h)
+    private void redrawDirty()
     {
-        g.setBackground(transparent);
-        g.clearRect(x0, y0, w, h);
-        int xTileStart = (x0 + xCam) / 16;
-        int yTileStart = (y0 + yCam) / 16;
-        int xTileEnd = (x0 + xCam + w) / 16;
-        int yTileEnd = (y0 + yCam + h) / 16;
+        if (dirtyTo < dirtyFrom) return;
+        int xTileStart = Math.max(dirtyFrom, xCam >> 4);
+        int xTileEnd = Math.min(dirtyTo, (xCam + width - 1) >> 4);
+        int yTileStart = yCam >> 4;
+        int yTileEnd = (yCam + height - 1) >> 4;
         for (int x = xTileStart; x <= xTileEnd; x++)
         {
             for (int y = yTileStart; y <= yTileEnd; y++)
             {
                 int b = level.getBlock(x, y) & 0xff;
                 if (((Level.TILE_BEHAVIORS[b]) & Level.BIT_ANIMATED) == 0)
-                {
-                    g.drawImage(Art.level[b % 16][b / 16], (x << 4) - xCam, (y << 4) - yCam, null);
-                }
+                    blit(b << 8, (x << 4) - xCam, (y << 4) - yCam);
+                else
+                    blit(-1, (x << 4) - xCam, (y << 4) - yCam);
             }
         }
+        dirtyFrom = 0;
+        dirtyTo = -1;
+    }
+
+    /**
+     * Copies the 16x16 tile at offset in Art.levelTiles to (xp, yp) in the
+     * buffer, clipped to its edges. An offset of -1 clears the tile instead.
+     */
+    private void blit(int offset, int xp, int yp)
+    {
+        int x0 = Math.max(xp, 0);
+        int x1 = Math.min(xp + 16, width);
+        int y0 = Math.max(yp, 0);
+        int y1 = Math.min(yp + 16, height);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        int[] tiles = Art.levelTiles;
+        for (int y = y0; y < y1; y++)
+        {
+            int to = y * width + x0;
+            if (offset < 0)
+                Arrays.fill(pixels, to, to + x1 - x0, 0);
+            else
+                System.arraycopy(tiles, offset + ((y - yp) << 4) + x0 - xp, pixels, to, x1 - x0);
+        }
     }
 
     public void render(Graphics g, int tick, float alpha)
     {
+        redrawDirty();
         g.drawImage(image, 0, 0, null);
 
         for (int x = xCam / 16; x <= (xCam + width) / 16; x++)
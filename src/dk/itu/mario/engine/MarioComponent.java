@@ -12,7 +12,6 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
 
 import javax.sound.sampled.LineUnavailableException;
 import javax.swing.*;
@@ -34,26 +33,36 @@ public class MarioComponent extends JComponent implements Runnable, KeyListener,
 		    private static final long serialVersionUID = 739318775993206607L;
 
 		    public static final int TICKS_PER_SECOND = 24;
+		    public static final int MAX_FRAMES_PER_SECOND = 60;
+		    // Ticks run back to back at most after a stall, the rest of the time is skipped
+		    public static final int MAX_CATCH_UP = 5;
 
 		    public static final int EVOLVE_VERSION = 4;
 		    public static final int GAME_VERSION = 4;
 
-		    private boolean running = false;
+		    private volatile boolean running = false;
 		    private int width, height;
 		    private int levelNum = 0;
 		    private int numLevels = 4;
 
 			private GraphicsConfiguration graphicsConfiguration;
-		    private Scene scene;
+		    // Replaced on the simulation thread, read by the render thread. Always
+		    // published before it is set, see setScene.
+		    private volatile Scene scene;
+		    // The last tick run, on the simulation thread
+		    private int lastTick;
 		    private SonarSoundEngine sound;
 		    private boolean focused = false;
 		    private boolean useScale2x = false;
 		    private boolean isCustom = false;
 
 
-		    private Scale2x scale2x = new Scale2x(320, 240);
+		    private Scale2x scale2x;
 
 		    private double openTime;
+
+		    private TickScheduler scheduler = new FixedStepScheduler(TICKS_PER_SECOND, MAX_FRAMES_PER_SECOND, MAX_CATCH_UP);
+		    private final TimingStats timingStats = new TimingStats();
 		    
 		    public int getLevelNum() {
 				return levelNum;
@@ -92,6 +101,11 @@ public class MarioComponent extends JComponent implements Runnable, KeyListener,
 		        setMinimumSize(size);
 		        setMaximumSize(size);
 
+		        // Scale by as much as the component fits, with a worker per spare core
+		        int factor = Math.max(2, Math.min(4, Math.min(width / 320, height / 240)));
+		        int threads = Math.min(3, Runtime.getRuntime().availableProcessors() - 1);
+		        scale2x = new Scale2x(320, 240, factor, Math.max(0, threads));
+
 		        try
 		        {
 		            sound = new SonarSoundEngine(64);
@@ -175,6 +189,25 @@ public class MarioComponent extends JComponent implements Runnable, KeyListener,
 		        running = false;
 		    }
 
+		    /**
+		     * Replaces the scheduler that paces ticks and frames. Has to be
+		     * called before start().
+		     */
+		    public void setScheduler(TickScheduler scheduler)
+		    {
+		        this.scheduler = scheduler;
+		    }
+
+		    public TimingStats getTimingStats()
+		    {
+		        return timingStats;
+		    }
+
+		    /**
+		     * The simulation thread. Ticks the scene as the scheduler says and
+		     * publishes its state after every tick. Drawing happens on a
+		     * separate render thread, so a slow display never delays a tick.
+		     */
 		    public void run()
 		    {
 
@@ -182,116 +215,132 @@ public class MarioComponent extends JComponent implements Runnable, KeyListener,
 
 		        Art.init(graphicsConfiguration, sound);
 
-		        VolatileImage image = createVolatileImage(320, 240);
-		        Graphics g = getGraphics();
-		        Graphics og = image.getGraphics();
-
-		        int lastTick = -1;
-		        int renderedFrames = 0;
-		        int fps = 0;
-
-
-		        long startTime = System.nanoTime();
-
-		        float time = (System.nanoTime()- startTime)/1000000000f;
-		        float now = time;
-		        float averagePassedTime = 0;
-
-		        boolean naiveTiming = true;
+		        lastTick = 0;
 		        if (isCustom)
 		        	toCustomGame();
 		        else
 		        	toRandomGame();
 
-		        float correction = 0f;
-		        if(System.getProperty("os.name") == "Mac OS X");
+		        scheduler.start(timingStats);
 
-		        while (running)
+		        Thread renderThread = new Thread(new Runnable()
 		        {
-		        	float lastTime = time;
-		            time = (System.nanoTime()- startTime)/1000000000f;
-		            float passedTime = time - lastTime;
-
-		            if (passedTime < 0) naiveTiming = false; // Stop relying on nanotime if it starts skipping around in time (ie running backwards at least once). This sometimes happens on dual core amds.
-		            averagePassedTime = averagePassedTime * 0.9f + passedTime * 0.1f;
-
-		            if (naiveTiming)
+		            public void run()
 		            {
-		                now = time;
+		                renderLoop();
 		            }
-		            else
+		        }, "Render Thread");
+		        renderThread.start();
+
+		        try
+		        {
+		            while (running)
 		            {
-		                now += averagePassedTime;
-		            }
+		                for (int due = scheduler.ticksDue(); due > 0; due--)
+		                {
+		                    long tickStart = System.nanoTime();
+		                    scene.tick();
+		                    lastTick++;
+		                    scene.publish(lastTick);
+		                    timingStats.tickRun(System.nanoTime() - tickStart);
+		                }
 
-		            int tick = (int) (now * TICKS_PER_SECOND);
+		                scheduler.awaitNextTick();
+		            }
+		        }
+		        catch (InterruptedException e)
+		        {
+		            running = false;
+		        }
 
-		            if (lastTick == -1)
-		            	lastTick = tick;
+		        try
+		        {
+		            renderThread.join();
+		        }
+		        catch (InterruptedException e)
+		        {
+		        }
+		        Art.stopMusic();
+		    }
 
-		            while (lastTick < tick)
-		            {
-		            	scene.tick();
+		    /**
+		     * Draws the newest state the simulation thread has published, at
+		     * the frame rate the scheduler allows.
+		     */
+		    private void renderLoop()
+		    {
+		        VolatileImage image = createVolatileImage(320, 240);
+		        Graphics g = getGraphics();
+		        Graphics og = image.getGraphics();
 
-		                lastTick++;
+		        Scene lastScene = null;
+		        int lastClock = -1;
 
-		                if (lastTick % TICKS_PER_SECOND == 0)
+		        try
+		        {
+		            while (running)
+		            {
+		                Scene scene = this.scene;
+		                int clock = scene.acquire();
+		                if (clock < 0)
 		                {
-		                    fps = renderedFrames;
-		                    renderedFrames = 0;
+		                    // Nothing published yet
+		                    scheduler.awaitNextFrame();
+		                    continue;
 		                }
-		            }
+		                // Clocks of another scene say nothing about dropped frames
+		                if (scene != lastScene)
+		                {
+		                    lastScene = scene;
+		                    lastClock = -1;
+		                }
+		                if (lastClock >= 0 && clock > lastClock + 1)
+		                    timingStats.framesDropped(clock - lastClock - 1);
+		                lastClock = clock;
 
-		            float alpha = (float) (now * TICKS_PER_SECOND - tick);
-		            sound.clientTick(alpha);
+		                float alpha = scheduler.alpha(clock);
+		                sound.clientTick(alpha);
 
-		            int x = (int) (Math.sin(now) * 16 + 160);
-		            int y = (int) (Math.cos(now) * 16 + 120);
+		                og.setColor(Color.WHITE);
+		                og.fillRect(0, 0, 320, 240);
 
-		            og.setColor(Color.WHITE);
-		            og.fillRect(0, 0, 320, 240);
+		                scene.render(og, alpha);
 
-		            scene.render(og, alpha);
+		                if (!this.hasFocus() && clock/4%2==0)
+		                {
+		                    String msg = "CLICK TO PLAY";
 
-		            if (!this.hasFocus() && tick/4%2==0)
-		            {
-		                String msg = "CLICK TO PLAY";
+		                    drawString(og, msg, 160 - msg.length() * 4 + 1, 110 + 1, 0);
+		                    drawString(og, msg, 160 - msg.length() * 4, 110, 7);
+		                }
+		                og.setColor(Color.BLACK);
 
-		                drawString(og, msg, 160 - msg.length() * 4 + 1, 110 + 1, 0);
-		                drawString(og, msg, 160 - msg.length() * 4, 110, 7);
-		            }
-		            og.setColor(Color.BLACK);
+		                if (width != 320 || height != 240)
+		                {
 
-		            if (width != 320 || height != 240)
-		            {
+		                    if (useScale2x)
+		                    {
+		                        g.drawImage(scale2x.scale(image), 0, 0, null);
+		                    }
+		                    else
+		                    {
+		                        g.drawImage(image, 0, 0, 320 * scale2x.getFactor(), 240 * scale2x.getFactor(), null);
 
-		                if (useScale2x)
-		                {
-		                    g.drawImage(scale2x.scale(image), 0, 0, null);
+		                    }
 		                }
 		                else
 		                {
-		                    g.drawImage(image, 0, 0, 640, 480, null);
-
+		                    g.drawImage(image, 0, 0, null);
 		                }
-		            }
-		            else
-		            {
-		                g.drawImage(image, 0, 0, null);
-		            }
 
-		            renderedFrames++;
+		                timingStats.frameRendered();
 
-		            try
-		            {
-		                Thread.sleep(5);
-		            }
-		            catch (InterruptedException e)
-		            {
+		                scheduler.awaitNextFrame();
 		            }
 		        }
-
-		        Art.stopMusic();
+		        catch (InterruptedException e)
+		        {
+		        }
 		    }
 
 		    private void drawString(Graphics g, String text, int x, int y, int c)
@@ -339,56 +388,66 @@ public class MarioComponent extends JComponent implements Runnable, KeyListener,
 
 		    private LevelScene randomLevel;
 
+		    // Player state shared by every level started from this component
+		    private WorldContext context = new WorldContext();
+
+
+		    /**
+		     * Publishes next and makes it the scene, so the render thread never
+		     * sees a scene that has nothing to draw yet. Called on the
+		     * simulation thread.
+		     */
+		    private void setScene(Scene next)
+		    {
+		        next.publish(lastTick);
+		        scene = next;
+		    }
 
 		    /**
 		     * Part of the fun increaser
 		     */
 		    public void toRandomGame(){
-		    	randomLevel = new LevelSceneTest(graphicsConfiguration,this,new Random().nextLong(),0,0,false);
+		    	randomLevel = new LevelSceneTest(graphicsConfiguration,this,context.levelRandom.nextLong(),0,0,false,context);
 
-		    	Mario.fire = false;
-		    	Mario.large = false;
-		    	Mario.coins = 0;
-		    	Mario.lives = 100;
+		    	context.resetPlayer();
 
 		    	randomLevel.init();
 		    	randomLevel.setSound(sound);
-		    	scene = randomLevel;
+		    	setScene(randomLevel);
 
 		    }
 
 		    public void toCustomGame(){
 
-		    	randomLevel = new LevelSceneTest(graphicsConfiguration,this,new Random().nextLong(),0,0,true);
-		    	Mario.fire = false;
-		    	Mario.large = false;
-		    	Mario.coins = 0;
-		    	Mario.lives = 100;
+		    	randomLevel = new LevelSceneTest(graphicsConfiguration,this,context.levelRandom.nextLong(),0,0,true,context);
+		    	context.resetPlayer();
 
 		    	randomLevel.init();
 		    	randomLevel.setSound(sound);
-		    	scene = randomLevel;
+		    	setScene(randomLevel);
 
 		    }
 		    
 		    public void generateNextLevel(){
 		    	
-		    	randomLevel = new LevelSceneTest(graphicsConfiguration,this,new Random().nextLong(),0,0,true);
+		    	randomLevel = new LevelSceneTest(graphicsConfiguration,this,context.levelRandom.nextLong(),0,0,true,context);
 		    	randomLevel.init();
 		    	randomLevel.setSound(sound);
-		    	scene = randomLevel;
+		    	setScene(randomLevel);
 		    }
 
 		    public void lose(){
-		        scene = new LoseScene();
-		        scene.setSound(sound);
-		        scene.init();
+		        Scene lose = new LoseScene();
+		        lose.setSound(sound);
+		        lose.init();
+		        setScene(lose);
 		    }
 
 		    public void win(){
-		        scene = new WinScene();
-		        scene.setSound(sound);
-		        scene.init();
+		        Scene win = new WinScene();
+		        win.setSound(sound);
+		        win.init();
+		        setScene(win);
 		    }
 
 
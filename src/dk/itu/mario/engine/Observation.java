@@ -0,0 +1,75 @@
+package dk.itu.mario.engine;
+
+import dk.itu.mario.level.Level;
+
+/**
+ * What an Agent sees of a LevelScene in one tick: the tiles in a window
+ * around mario, the enemies and mario himself. It is made once and filled
+ * in again every tick by LevelScene.observe, so nothing is allocated while
+ * playing and agents can read the arrays directly.
+ */
+public class Observation {
+
+	// The window, in tiles
+	public final int width;
+	public final int height;
+
+	// The tiles of the window column by column, like the level map: tile
+	// (originX + i, originY + j) is tiles[i * height + j]
+	public final byte[] tiles;
+	public int originX;
+	public int originY;
+
+	// Enemies, bullets and shells in the scene, in pixels. enemyKind is
+	// Enemy.type for enemies, EventLog.ENEMY_BULLET_BILL and
+	// EventLog.ENEMY_SHELL for the others.
+	public final float[] enemyX;
+	public final float[] enemyY;
+	public final int[] enemyKind;
+	public int enemies;
+
+	// Mario, in pixels
+	public float marioX;
+	public float marioY;
+	public float marioXa;
+	public float marioYa;
+	public boolean large;
+	public boolean fire;
+	public boolean onGround;
+	public boolean mayJump;
+
+	// Ticks played in the scene, see LevelScene.tick
+	public int tick;
+
+	/**
+	 * @param width      tiles across the window, centered on mario
+	 * @param height     tiles down the window, centered on mario
+	 * @param maxEnemies enemies kept, the rest are left out
+	 */
+	public Observation(int width, int height, int maxEnemies) {
+		this.width = width;
+		this.height = height;
+		this.tiles = new byte[width * height];
+		this.enemyX = new float[maxEnemies];
+		this.enemyY = new float[maxEnemies];
+		this.enemyKind = new int[maxEnemies];
+	}
+
+	/**
+	 * @return the tile at level tile (x, y), 0 outside the window
+	 */
+	public byte getTile(int x, int y) {
+		x -= originX;
+		y -= originY;
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return 0;
+		return tiles[x * height + y];
+	}
+
+	/**
+	 * Level.isBlocking for the tiles in the window
+	 */
+	public boolean isBlocking(int x, int y, float ya) {
+		return Level.blocks(Level.TILE_BEHAVIORS[getTile(x, y) & 0xff], ya);
+	}
+}
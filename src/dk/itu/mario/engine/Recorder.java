@@ -0,0 +1,92 @@
+package dk.itu.mario.engine;
+
+import java.util.Arrays;
+
+/**
+ * Records the key mask of every tick (see Mario.getKeyMask) into a Replay.
+ *
+ * Players hold the same keys for many ticks, so the masks are run-length
+ * encoded: a run is the mask byte followed by the number of ticks as an
+ * unsigned varint, 7 bits per byte with the high bit set on all but the
+ * last. The masks only use the low 7 bits, so the byte ATTEMPT can mark
+ * where mario died and the level was restarted. Ticks recorded between the
+ * death and the restart then don't shift the input of the next attempt,
+ * however long the death animation took on screen.
+ */
+public class Recorder {
+
+	public static final int ATTEMPT = 0x80;
+
+	private final Replay replay;
+
+	private byte[] bytes = new byte[256];
+	private int size;
+
+	private byte runMask;
+	private int runLength;
+	private int attemptTicks;
+
+	public Recorder(Replay header) {
+		this.replay = header;
+	}
+
+	public void addTick(byte mask) {
+		if (runLength > 0 && mask != runMask) {
+			writeRun();
+		}
+		runMask = mask;
+		runLength++;
+		attemptTicks++;
+		replay.ticks++;
+	}
+
+	/**
+	 * Marks the start of the next attempt. Does nothing if no tick has been
+	 * recorded since the last one.
+	 */
+	public void newAttempt() {
+		if (attemptTicks == 0)
+			return;
+		if (runLength > 0)
+			writeRun();
+		write(ATTEMPT);
+		attemptTicks = 0;
+	}
+
+	/**
+	 * @return the replay with the input recorded so far. Recording can go on
+	 *         afterwards.
+	 */
+	public Replay getReplay() {
+		int end = size;
+		byte mask = runMask;
+		int length = runLength;
+		if (length > 0)
+			writeRun();
+
+		replay.input = Arrays.copyOf(bytes, size);
+
+		// Leave the open run open
+		size = end;
+		runMask = mask;
+		runLength = length;
+		return replay;
+	}
+
+	private void writeRun() {
+		write(runMask);
+		int length = runLength;
+		while (length >= 0x80) {
+			write(length & 0x7f | 0x80);
+			length >>>= 7;
+		}
+		write(length);
+		runLength = 0;
+	}
+
+	private void write(int b) {
+		if (size == bytes.length)
+			bytes = Arrays.copyOf(bytes, size * 2);
+		bytes[size++] = (byte) b;
+	}
+}
@@ -0,0 +1,179 @@
+package dk.itu.mario.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import maven.code.Configuration;
+import maven.code.Configurations;
+import dk.itu.mario.MarioInterface.GamePlay;
+import dk.itu.mario.MarioInterface.LevelInterface;
+import dk.itu.mario.level.MyLevel;
+
+/**
+ * A recorded play session of one MyLevel: everything needed to generate the
+ * level again, the player state it was started with, and the keys pressed
+ * on every tick.
+ *
+ * The keys are stored run-length encoded, see Recorder. The file layout is
+ *
+ *   int   MAGIC
+ *   long  level seed
+ *   short level width
+ *   int   completion time the level was generated for
+ *   short number of death counts n, then n times (short config id, short count)
+ *   long  AI seed
+ *   short lives, byte flags (FLAG_LARGE, FLAG_FIRE), short coins, int enemies spawned
+ *   int   number of ticks
+ *   int   length of the input in bytes, then the input
+ */
+public class Replay {
+
+	// Changes with the levels MyLevel generates, so an old replay is not
+	// played on a different level
+	public static final int MAGIC = 0x4d525032; // "MRP2"
+
+	public static final int FLAG_LARGE = 1;
+	public static final int FLAG_FIRE = 2;
+
+	// The level
+	public long levelSeed;
+	public int levelWidth;
+	public int completionTime;
+	public Map<Integer, Integer> deathCount = new HashMap<Integer, Integer>();
+
+	// The world when the first attempt started
+	public long aiSeed;
+	public int lives;
+	public boolean large;
+	public boolean fire;
+	public int coins;
+	public int enemiesSpawned;
+
+	// The keys
+	public int ticks;
+	public byte[] input = new byte[0];
+
+	/**
+	 * Starts a replay header for a level about to be played
+	 *
+	 * @param aiSeed the AI seed of the scene playing it, see LevelScene.getAiSeed
+	 */
+	public static Replay of(MyLevel level, WorldContext context, long aiSeed) {
+		Replay replay = new Replay();
+		replay.levelSeed = level.getSeed();
+		replay.levelWidth = level.getWidth();
+		replay.completionTime = level.getPlayerMetrics().getCompletionTime();
+		for (Map.Entry<Configuration, Integer> entry : level.getGenerationDeathCount().entrySet())
+			replay.deathCount.put(entry.getKey().id, entry.getValue());
+
+		replay.aiSeed = aiSeed;
+		replay.lives = context.lives;
+		replay.large = context.large;
+		replay.fire = context.fire;
+		replay.coins = context.coins;
+		replay.enemiesSpawned = context.enemiesSpawned;
+		return replay;
+	}
+
+	/**
+	 * Generates the level with the current generator
+	 */
+	public MyLevel createLevel() {
+		GamePlay playerMetrics = new GamePlay();
+		playerMetrics.completionTime = completionTime;
+
+		Map<Configuration, Integer> configDeaths = new HashMap<Configuration, Integer>();
+		for (Configuration c : Configurations.configs()) {
+			Integer count = deathCount.get(c.id);
+			if (count != null)
+				configDeaths.put(c, count);
+		}
+
+		return new MyLevel(levelWidth, 15, levelSeed, 1, LevelInterface.TYPE_OVERGROUND, playerMetrics, configDeaths);
+	}
+
+	/**
+	 * Puts the player state of the first attempt into the context
+	 */
+	public void applyTo(WorldContext context) {
+		context.lives = lives;
+		context.large = large;
+		context.fire = fire;
+		context.coins = coins;
+		context.enemiesSpawned = enemiesSpawned;
+	}
+
+	public void write(DataOutputStream dos) throws IOException {
+		dos.writeInt(MAGIC);
+		dos.writeLong(levelSeed);
+		dos.writeShort(levelWidth);
+		dos.writeInt(completionTime);
+		dos.writeShort(deathCount.size());
+		for (Map.Entry<Integer, Integer> entry : deathCount.entrySet()) {
+			dos.writeShort(entry.getKey());
+			dos.writeShort(entry.getValue());
+		}
+
+		dos.writeLong(aiSeed);
+		dos.writeShort(lives);
+		dos.writeByte((large ? FLAG_LARGE : 0) | (fire ? FLAG_FIRE : 0));
+		dos.writeShort(coins);
+		dos.writeInt(enemiesSpawned);
+
+		dos.writeInt(ticks);
+		dos.writeInt(input.length);
+		dos.write(input);
+	}
+
+	public static Replay read(DataInputStream dis) throws IOException {
+		if (dis.readInt() != MAGIC)
+			throw new IOException("Not a replay file");
+
+		Replay replay = new Replay();
+		replay.levelSeed = dis.readLong();
+		replay.levelWidth = dis.readUnsignedShort();
+		replay.completionTime = dis.readInt();
+		int configs = dis.readUnsignedShort();
+		for (int i = 0; i < configs; i++)
+			replay.deathCount.put(dis.readUnsignedShort(), dis.readUnsignedShort());
+
+		replay.aiSeed = dis.readLong();
+		replay.lives = dis.readShort();
+		int flags = dis.readUnsignedByte();
+		replay.large = (flags & FLAG_LARGE) != 0;
+		replay.fire = (flags & FLAG_FIRE) != 0;
+		replay.coins = dis.readShort();
+		replay.enemiesSpawned = dis.readInt();
+
+		replay.ticks = dis.readInt();
+		replay.input = new byte[dis.readInt()];
+		dis.readFully(replay.input);
+		return replay;
+	}
+
+	public void save(File file) throws IOException {
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			write(dos);
+		} finally {
+			dos.close();
+		}
+	}
+
+	public static Replay load(File file) throws IOException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			return read(dis);
+		} finally {
+			dis.close();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package dk.itu.mario.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dk.itu.mario.level.Level;
+import dk.itu.mario.scene.HeadlessLevelScene;
+
+/**
+ * Plays a Replay headless, as fast as the CPU allows.
+ *
+ * The start of every attempt is a complete checkpoint: the level is
+ * restored, the AI stream restarts from its seed and mario is rebuilt from
+ * the player state in the context. The runner keeps that state for each
+ * attempt it has reached, so seek() only re-simulates from the start of the
+ * attempt the target tick lies in.
+ */
+public class ReplayRunner {
+
+	private final Replay replay;
+	private final WorldContext context;
+	private final HeadlessLevelScene scene;
+	private final Replayer replayer;
+
+	private final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+
+	/**
+	 * Regenerates the level from the replay with the current generator
+	 */
+	public ReplayRunner(Replay replay) {
+		this(replay, replay.createLevel());
+	}
+
+	public ReplayRunner(Replay replay, Level level) {
+		this.replay = replay;
+		this.context = new WorldContext();
+		replay.applyTo(context);
+
+		scene = new HeadlessLevelScene(level, context);
+		scene.setAiSeed(replay.aiSeed);
+		replayer = new Replayer(replay);
+		scene.replayer = replayer;
+		scene.init();
+		checkpoints.add(new Checkpoint());
+	}
+
+	public HeadlessLevelScene getScene() {
+		return scene;
+	}
+
+	/**
+	 * @return true once mario has won or lost, or the recorded input ran out
+	 */
+	public boolean isFinished() {
+		return scene.isFinished() || replayer.isFinished();
+	}
+
+	public void tick() {
+		if (isFinished())
+			return;
+		int deaths = scene.getDeathPositions().length;
+		scene.tick();
+		if (scene.getDeathPositions().length > deaths && !scene.isFinished()
+				&& replayer.getAttempt() == checkpoints.size())
+			checkpoints.add(new Checkpoint());
+	}
+
+	/**
+	 * Plays to the end of the replay
+	 *
+	 * @return the number of ticks played in total
+	 */
+	public int run() {
+		while (!isFinished())
+			tick();
+		return scene.getTicksRun();
+	}
+
+	/**
+	 * Moves the scene to the given tick, or to the end of the replay if that
+	 * comes first. Going back restores the checkpoint at the start of the
+	 * attempt the tick lies in and plays forward from there.
+	 */
+	public void seek(int tick) {
+		Checkpoint from = null;
+		for (Checkpoint checkpoint : checkpoints) {
+			if (checkpoint.ticksRun <= tick)
+				from = checkpoint;
+		}
+
+		int current = scene.getTicksRun();
+		if (from != null && (tick < current || from.ticksRun > current))
+			from.restore();
+
+		while (scene.getTicksRun() < tick && !isFinished())
+			tick();
+	}
+
+	/**
+	 * The state at the start of an attempt
+	 */
+	private class Checkpoint {
+		final int attempt = replayer.getAttempt();
+		final int ticksRun = scene.getTicksRun();
+		final int[] deathPositions = scene.getDeathPositions();
+		final int lives = context.lives;
+		final boolean large = context.large;
+		final boolean fire = context.fire;
+		final int coins = context.coins;
+		final int enemiesSpawned = context.enemiesSpawned;
+
+		void restore() {
+			context.lives = lives;
+			context.large = large;
+			context.fire = fire;
+			context.coins = coins;
+			context.enemiesSpawned = enemiesSpawned;
+			scene.restart(ticksRun, deathPositions);
+			replayer.seekAttempt(attempt);
+		}
+	}
+
+	/**
+	 * Usage: ReplayRunner replay.mrp...
+	 *
+	 * Plays every replay against the current level generator and prints the
+	 * ticks played, whether mario won and the tile x of every death.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: ReplayRunner replay.mrp...");
+			System.exit(1);
+		}
+
+		Level.initBehaviors();
+		for (String file : args) {
+			ReplayRunner runner = new ReplayRunner(Replay.load(new File(file)));
+			int ticks = runner.run();
+			HeadlessLevelScene scene = runner.getScene();
+			System.out.println(file + " ticks=" + ticks + "/" + runner.replay.ticks + " won=" + scene.hasWon()
+					+ " deaths=" + Arrays.toString(scene.getDeathPositions()));
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package dk.itu.mario.engine;
+
+import java.util.Arrays;
+
+/**
+ * Plays back the key masks of a Replay, one per tick. The input is decoded
+ * once into runs, so every tick and every jump to an attempt is constant
+ * time.
+ *
+ * An attempt never reads into the next one: once its input is used up,
+ * nextTick() returns 0 until the scene restarts and calls nextAttempt().
+ */
+public class Replayer {
+
+	private byte[] masks = new byte[64];
+	private int[] lengths = new int[64];
+	private int runs;
+
+	// Index of the first run of every attempt, plus runs at the end
+	private int[] attemptStarts = new int[8];
+	private int attempts;
+
+	private int attempt;
+	private int run;
+	private int offset;
+	private int attemptTicks;
+
+	public Replayer(Replay replay) {
+		byte[] input = replay.input;
+		attemptStarts[attempts++] = 0;
+
+		int i = 0;
+		while (i < input.length) {
+			int b = input[i++] & 0xff;
+			if (b == Recorder.ATTEMPT) {
+				if (attempts == attemptStarts.length)
+					attemptStarts = Arrays.copyOf(attemptStarts, attempts * 2);
+				attemptStarts[attempts++] = runs;
+				continue;
+			}
+
+			int length = 0;
+			int shift = 0;
+			int v;
+			do {
+				v = input[i++] & 0xff;
+				length |= (v & 0x7f) << shift;
+				shift += 7;
+			} while ((v & 0x80) != 0);
+
+			if (runs == masks.length) {
+				masks = Arrays.copyOf(masks, runs * 2);
+				lengths = Arrays.copyOf(lengths, runs * 2);
+			}
+			masks[runs] = (byte) b;
+			lengths[runs] = length;
+			runs++;
+		}
+
+		if (attempts == attemptStarts.length)
+			attemptStarts = Arrays.copyOf(attemptStarts, attempts + 1);
+		attemptStarts[attempts] = runs;
+	}
+
+	public byte nextTick() {
+		if (run >= attemptStarts[attempt + 1])
+			return 0;
+
+		byte mask = masks[run];
+		attemptTicks++;
+		if (++offset == lengths[run]) {
+			run++;
+			offset = 0;
+		}
+		return mask;
+	}
+
+	/**
+	 * Skips the rest of the current attempt. Does nothing if no tick of it
+	 * has been read yet, which mirrors Recorder.newAttempt.
+	 */
+	public void nextAttempt() {
+		if (attemptTicks == 0)
+			return;
+		if (attempt + 1 < attempts) {
+			seekAttempt(attempt + 1);
+		} else {
+			// More restarts than were recorded, there is no input left
+			run = attemptStarts[attempts];
+			offset = 0;
+			attemptTicks = 0;
+		}
+	}
+
+	/**
+	 * Moves to the first tick of the given attempt
+	 */
+	public void seekAttempt(int attempt) {
+		if (attempt < 0 || attempt >= attempts)
+			throw new IllegalArgumentException("No attempt " + attempt + " in replay with " + attempts);
+		this.attempt = attempt;
+		run = attemptStarts[attempt];
+		offset = 0;
+		attemptTicks = 0;
+	}
+
+	public int getAttempt() {
+		return attempt;
+	}
+
+	public int getAttemptCount() {
+		return attempts;
+	}
+
+	/**
+	 * @return true once the last attempt has no input left
+	 */
+	public boolean isFinished() {
+		return attempt == attempts - 1 && run >= attemptStarts[attempts];
+	}
+}
@@ -16,18 +16,41 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 
 
+/**
+ * Also does Scale3x, and Scale4x as two passes of Scale2x. The rows of every
+ * pass are split into bands that a small fixed set of worker threads scale
+ * together with the calling thread. Nothing is allocated once the object is
+ * made.
+ */
 public class Scale2x
 {
     private int width;
     private int height;
+    private int factor;
 
     private BufferedImage sourceImage;
     private int[] sourcePixels;
     private Graphics sourceGraphics;
 
+    // Output of the first Scale2x pass for Scale4x, with the same border as the source
+    private int[] middlePixels;
+
     private BufferedImage targetImage;
     private int[] targetPixels;
 
+    // The pass the bands are working on, set before the workers are woken up
+    private int[] passSource;
+    private int passWidth;
+    private int passHeight;
+    private int[] passTarget;
+    private int passTargetStart;
+    private int passTargetLine;
+
+    private final Object lock = new Object();
+    private int bands;
+    private int generation = 0;
+    private int pending = 0;
+
     /**
      * Creates a new Scale2x object. The new object will scale images of the specified size to images
      * that are twice as large.<br>
@@ -37,8 +60,24 @@ public class Scale2x
      */
     public Scale2x(int width, int height)
     {
+        this(width, height, 2, 0);
+    }
+
+    /**
+     * Creates a new scaler for Scale2x, Scale3x or Scale4x.<br>
+     * 
+     * @param width The width of the images to be scaled
+     * @param height The height of the images to be scaled
+     * @param factor 2, 3 or 4
+     * @param threads The number of worker threads to use next to the thread calling scale, 0 to scale on that thread only
+     */
+    public Scale2x(int width, int height, int factor, int threads)
+    {
+        if (factor < 2 || factor > 4)
+            throw new IllegalArgumentException("Can only scale by 2, 3 or 4, not " + factor);
         this.width = width;
         this.height = height;
+        this.factor = factor;
 
         // A border of one pixel in each direction, and one down, to avoid if statements in the scale loop
         sourceImage = new BufferedImage(width + 2, height + 3, BufferedImage.TYPE_INT_RGB);
@@ -46,13 +85,31 @@ public class Scale2x
         sourcePixels = sourceDataBuffer.getData();
         sourceGraphics = sourceImage.getGraphics();
 
-        targetImage = new BufferedImage(width * 2, height * 2, BufferedImage.TYPE_INT_RGB);
+        if (factor == 4)
+        {
+            middlePixels = new int[(width * 2 + 2) * (height * 2 + 3)];
+        }
+
+        targetImage = new BufferedImage(width * factor, height * factor, BufferedImage.TYPE_INT_RGB);
         DataBufferInt targetDataBuffer = (DataBufferInt) targetImage.getRaster().getDataBuffer();
         targetPixels = targetDataBuffer.getData();
+
+        bands = threads + 1;
+        for (int i = 0; i < threads; i++)
+        {
+            Thread worker = new Thread(new Worker(i), "Scale" + factor + "x-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public int getFactor()
+    {
+        return factor;
     }
 
     /**
-     * Scales an image and returns a twice as large image.<br>
+     * Scales an image and returns a larger image.<br>
      * This assumes the input image is of the dimensions specified in the Scale2x constructor.<br>
      * The returned image is a reference to the internal scale target in this Scale2x, so it
      * will get changed if you call this method again, so don't hold on to it for too long.<br>
@@ -70,12 +127,87 @@ public class Scale2x
         // This lets us avoid having to check that A-I are in range of the image before samping them
         sourceGraphics.drawImage(img, 1, 1, null);
 
+        if (factor == 4)
+        {
+            int middleLine = width * 2 + 2;
+            runPass(sourcePixels, width, height, middlePixels, middleLine + 1, middleLine);
+            runPass(middlePixels, width * 2, height * 2, targetPixels, 0, width * 4);
+        }
+        else
+        {
+            runPass(sourcePixels, width, height, targetPixels, 0, width * factor);
+        }
+
+        return targetImage;
+    }
+
+    /**
+     * Scales all rows of one pass, split in bands over the workers and this thread
+     */
+    private void runPass(int[] source, int width, int height, int[] target, int targetStart, int targetLine)
+    {
+        passSource = source;
+        passWidth = width;
+        passHeight = height;
+        passTarget = target;
+        passTargetStart = targetStart;
+        passTargetLine = targetLine;
+
+        if (bands == 1)
+        {
+            scaleBand(0);
+            return;
+        }
+
+        synchronized (lock)
+        {
+            pending = bands - 1;
+            generation++;
+            lock.notifyAll();
+        }
+
+        scaleBand(bands - 1);
+
+        boolean interrupted = false;
+        synchronized (lock)
+        {
+            while (pending > 0)
+            {
+                try
+                {
+                    lock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void scaleBand(int band)
+    {
+        int y0 = passHeight * band / bands;
+        int y1 = passHeight * (band + 1) / bands;
+        if (factor == 3)
+            scale3x(passSource, passWidth, y0, y1, passTarget, passTargetStart, passTargetLine);
+        else
+            scale2x(passSource, passWidth, y0, y1, passTarget, passTargetStart, passTargetLine);
+    }
+
+    /**
+     * Scale2x of source rows y0 to y1. The source has the one pixel border, the
+     * rows of the target are targetLine apart and pixel (0, 0) is at targetStart.
+     */
+    private static void scale2x(int[] source, int width, int y0, int y1, int[] target, int targetStart, int targetLine)
+    {
         int line = width + 2;
-        for (int y = 0; y < height; y++)
+        for (int y = y0; y < y1; y++)
         {
             // Two lines of target pixel pointers
-            int tp0 = y * width * 4 - 1;
-            int tp1 = tp0 + width * 2;
+            int tp0 = targetStart + y * 2 * targetLine - 1;
+            int tp1 = tp0 + targetLine;
 
             // Three lines of source pixel pointers
             int sp0 = (y) * line;
@@ -83,31 +215,31 @@ public class Scale2x
             int sp2 = (y + 2) * line;
 
             // Fill the initial A-I values
-            int A = sourcePixels[sp0];
-            int B = sourcePixels[++sp0];
-            int C = sourcePixels[++sp0];
-            int D = sourcePixels[sp1];
-            int E = sourcePixels[++sp1];
-            int F = sourcePixels[++sp1];
-            int G = sourcePixels[sp2];
-            int H = sourcePixels[++sp2];
-            int I = sourcePixels[++sp2];
+            int A = source[sp0];
+            int B = source[++sp0];
+            int C = source[++sp0];
+            int D = source[sp1];
+            int E = source[++sp1];
+            int F = source[++sp1];
+            int G = source[sp2];
+            int H = source[++sp2];
+            int I = source[++sp2];
 
             for (int x = 0; x < width; x++)
             {
                 if (B != H && D != F)
                 {
-                    targetPixels[++tp0] = D == B ? D : E;
-                    targetPixels[++tp0] = B == F ? F : E;
-                    targetPixels[++tp1] = D == H ? D : E;
-                    targetPixels[++tp1] = H == F ? F : E;
+                    target[++tp0] = D == B ? D : E;
+                    target[++tp0] = B == F ? F : E;
+                    target[++tp1] = D == H ? D : E;
+                    target[++tp1] = H == F ? F : E;
                 }
                 else
                 {
-                    targetPixels[++tp0] = E;
-                    targetPixels[++tp0] = E;
-                    targetPixels[++tp1] = E;
-                    targetPixels[++tp1] = E;
+                    target[++tp0] = E;
+                    target[++tp0] = E;
+                    target[++tp1] = E;
+                    target[++tp1] = E;
                 }
 
                 // Scroll A-I left
@@ -119,12 +251,119 @@ public class Scale2x
                 H = I;
 
                 // Resample rightmost edge
-                C = sourcePixels[++sp0];
-                F = sourcePixels[++sp1];
-                I = sourcePixels[++sp2];
+                C = source[++sp0];
+                F = source[++sp1];
+                I = source[++sp2];
             }
         }
+    }
 
-        return targetImage;
+    /**
+     * Scale3x of source rows y0 to y1, laid out like scale2x
+     */
+    private static void scale3x(int[] source, int width, int y0, int y1, int[] target, int targetStart, int targetLine)
+    {
+        int line = width + 2;
+        for (int y = y0; y < y1; y++)
+        {
+            // Three lines of target pixel pointers
+            int tp0 = targetStart + y * 3 * targetLine - 1;
+            int tp1 = tp0 + targetLine;
+            int tp2 = tp1 + targetLine;
+
+            // Three lines of source pixel pointers
+            int sp0 = (y) * line;
+            int sp1 = (y + 1) * line;
+            int sp2 = (y + 2) * line;
+
+            // Fill the initial A-I values
+            int A = source[sp0];
+            int B = source[++sp0];
+            int C = source[++sp0];
+            int D = source[sp1];
+            int E = source[++sp1];
+            int F = source[++sp1];
+            int G = source[sp2];
+            int H = source[++sp2];
+            int I = source[++sp2];
+
+            for (int x = 0; x < width; x++)
+            {
+                if (B != H && D != F)
+                {
+                    target[++tp0] = D == B ? D : E;
+                    target[++tp0] = (D == B && E != C) || (B == F && E != A) ? B : E;
+                    target[++tp0] = B == F ? F : E;
+                    target[++tp1] = (D == B && E != G) || (D == H && E != A) ? D : E;
+                    target[++tp1] = E;
+                    target[++tp1] = (B == F && E != I) || (H == F && E != C) ? F : E;
+                    target[++tp2] = D == H ? D : E;
+                    target[++tp2] = (D == H && E != I) || (H == F && E != G) ? H : E;
+                    target[++tp2] = H == F ? F : E;
+                }
+                else
+                {
+                    target[++tp0] = E;
+                    target[++tp0] = E;
+                    target[++tp0] = E;
+                    target[++tp1] = E;
+                    target[++tp1] = E;
+                    target[++tp1] = E;
+                    target[++tp2] = E;
+                    target[++tp2] = E;
+                    target[++tp2] = E;
+                }
+
+                // Scroll A-I left
+                A = B;
+                B = C;
+                D = E;
+                E = F;
+                G = H;
+                H = I;
+
+                // Resample rightmost edge
+                C = source[++sp0];
+                F = source[++sp1];
+                I = source[++sp2];
+            }
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        private final int band;
+
+        public Worker(int band)
+        {
+            this.band = band;
+        }
+
+        public void run()
+        {
+            int seen = 0;
+            try
+            {
+                while (true)
+                {
+                    synchronized (lock)
+                    {
+                        while (generation == seen)
+                            lock.wait();
+                        seen = generation;
+                    }
+
+                    scaleBand(band);
+
+                    synchronized (lock)
+                    {
+                        if (--pending == 0) lock.notifyAll();
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package dk.itu.mario.engine;
+
+/**
+ * Decides when MarioComponent runs ticks and draws frames. The simulation
+ * thread calls start once, then loops over ticksDue and awaitNextTick. The
+ * render thread loops over awaitNextFrame and uses alpha to interpolate.
+ */
+public interface TickScheduler
+{
+    /**
+     * Starts the clock at tick 0
+     */
+    public void start(TimingStats stats);
+
+    /**
+     * @return the number of ticks to run now. Time that would need more
+     *         ticks than the scheduler allows is dropped instead.
+     */
+    public int ticksDue();
+
+    /**
+     * Blocks until the next tick is due
+     */
+    public void awaitNextTick() throws InterruptedException;
+
+    /**
+     * Blocks until the next frame should be drawn
+     */
+    public void awaitNextFrame() throws InterruptedException;
+
+    /**
+     * @return how far the clock is past the given tick, from 0 to 1
+     */
+    public float alpha(int tick);
+}
@@ -0,0 +1,102 @@
+package dk.itu.mario.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of the game loop, readable from any thread while the game runs.
+ * Each counter is only written by one thread: the simulation thread counts
+ * ticks, the render thread counts frames.
+ */
+public class TimingStats
+{
+    // Bucket i counts ticks that took from 2^i to 2^(i+1) microseconds,
+    // the first bucket also takes everything faster and the last everything slower
+    public static final int HISTOGRAM_BUCKETS = 20;
+
+    private volatile long ticksRun;
+    private volatile long ticksSkipped;
+    private volatile long framesRendered;
+    private volatile long framesDropped;
+    private final AtomicLongArray tickHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    public void tickRun(long nanos)
+    {
+        ticksRun++;
+        long micros = nanos / 1000;
+        int bucket = micros <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+        if (bucket >= HISTOGRAM_BUCKETS) bucket = HISTOGRAM_BUCKETS - 1;
+        tickHistogram.incrementAndGet(bucket);
+    }
+
+    public void ticksSkipped(long ticks)
+    {
+        ticksSkipped += ticks;
+    }
+
+    public void frameRendered()
+    {
+        framesRendered++;
+    }
+
+    /**
+     * Ticks whose state was published but replaced before a frame drew it
+     */
+    public void framesDropped(long frames)
+    {
+        framesDropped += frames;
+    }
+
+    public long getTicksRun()
+    {
+        return ticksRun;
+    }
+
+    /**
+     * @return the ticks that were never run because the game fell too far behind
+     */
+    public long getTicksSkipped()
+    {
+        return ticksSkipped;
+    }
+
+    public long getFramesRendered()
+    {
+        return framesRendered;
+    }
+
+    public long getFramesDropped()
+    {
+        return framesDropped;
+    }
+
+    /**
+     * @return a copy of the tick duration histogram, see HISTOGRAM_BUCKETS
+     */
+    public long[] getTickHistogram()
+    {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+            histogram[i] = tickHistogram.get(i);
+        return histogram;
+    }
+
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append("ticks=").append(ticksRun);
+        text.append(" skipped=").append(ticksSkipped);
+        text.append(" frames=").append(framesRendered);
+        text.append(" dropped=").append(framesDropped);
+        text.append(" tickMicros={");
+        boolean first = true;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+        {
+            long count = tickHistogram.get(i);
+            if (count == 0) continue;
+            if (!first) text.append(", ");
+            text.append("<").append(1L << (i + 1)).append(":").append(count);
+            first = false;
+        }
+        return text.append("}").toString();
+    }
+}
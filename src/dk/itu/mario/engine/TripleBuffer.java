@@ -0,0 +1,60 @@
+package dk.itu.mario.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands whole objects from one writer thread to one reader thread without
+ * locks. The writer fills back() and publishes it, the reader takes the
+ * newest published object with front(). Each side owns one of the three
+ * buffers at any time and the third one is swapped between them, so neither
+ * side ever waits for the other and the reader never sees a half written
+ * buffer.
+ */
+public class TripleBuffer<T>
+{
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+
+    // Index of the last published buffer, plus FRESH until the reader takes it
+    private final AtomicInteger ready = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    public TripleBuffer(T first, T second, T third)
+    {
+        buffers = new Object[] { first, second, third };
+    }
+
+    /**
+     * @return the buffer the writer fills next
+     */
+    @SuppressWarnings("unchecked")
+    public T back()
+    {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Makes the filled back buffer the newest one and gives the writer
+     * another one to fill
+     */
+    public void publish()
+    {
+        back = ready.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * @return the newest published buffer. It stays the reader's until the
+     *         next call.
+     */
+    @SuppressWarnings("unchecked")
+    public T front()
+    {
+        if ((ready.get() & FRESH) != 0)
+        {
+            front = ready.getAndSet(front) & ~FRESH;
+        }
+        return (T) buffers[front];
+    }
+}
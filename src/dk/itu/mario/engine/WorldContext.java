@@ -0,0 +1,74 @@
+package dk.itu.mario.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import maven.code.Configuration;
+
+/**
+ * Everything that used to be static game state. One context belongs to one
+ * player session, so several LevelScenes can run in the same JVM without
+ * seeing each other's lives, keys or enemy counts.
+ *
+ * A MarioComponent keeps a single context and hands it to every level it
+ * creates, so power-ups, lives and death statistics still carry over from
+ * one level to the next.
+ *
+ * All randomness in a world comes from streams split off its seed, one per
+ * subsystem, so drawing more particles never changes what the enemies or
+ * the level generator do. The same seed and the same key presses give the
+ * same game, tick for tick.
+ */
+public class WorldContext
+{
+    public final long seed;
+
+    // Seeds and types of generated levels
+    public final SplittableRandom levelRandom;
+    // Hands every LevelScene the seed of its enemy AI stream
+    public final SplittableRandom aiRandom;
+    // Cosmetic effects, see ParticlePool
+    public final SplittableRandom particleRandom;
+
+    // Player state that survives death and level changes
+    public boolean large = false;
+    public boolean fire = false;
+    public int coins = 0;
+    public int lives = 100;
+    public String levelString = "none";
+
+    public final boolean[] keys = new boolean[16];
+    // Keys the input thread pressed, see Scene.toggleKey
+    public final AtomicInteger keyLatch = new AtomicInteger();
+
+    public int enemiesSpawned = 0;
+    public int enemiesMax = 1000;
+
+    // Deaths per level configuration, used by MyLevel to adapt generation
+    public final Map<Configuration, Integer> deathCount = new HashMap<>();
+
+    public WorldContext()
+    {
+        this(new SplittableRandom().nextLong());
+    }
+
+    public WorldContext(long seed)
+    {
+        this.seed = seed;
+        SplittableRandom root = new SplittableRandom(seed);
+        levelRandom = root.split();
+        aiRandom = root.split();
+        particleRandom = root.split();
+    }
+
+    public void resetPlayer()
+    {
+        large = false;
+        fire = false;
+        coins = 0;
+        lives = 100;
+        levelString = "none";
+    }
+}
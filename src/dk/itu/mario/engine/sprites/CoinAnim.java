@@ -7,10 +7,20 @@ import dk.itu.mario.level.Level;
 
 public class CoinAnim extends Sprite
 {
-    private int life = 10;
+    private int life;
 
     public CoinAnim(int xTile, int yTile)
     {
+        init(xTile, yTile);
+    }
+
+    CoinAnim()
+    {
+    }
+
+    void init(int xTile, int yTile)
+    {
+        life = 10;
         sheet = Art.level;
         wPic = hPic = 16;
 
@@ -26,10 +36,17 @@ public class CoinAnim extends Sprite
     {
         if (life-- < 0)
         {
-            Sprite.spriteContext.removeSprite(this);
+            spriteContext.removeSprite(this);
             for (int xx = 0; xx < 2; xx++)
                 for (int yy = 0; yy < 2; yy++)
-                    Sprite.spriteContext.addSprite(new Sparkle((int)x + xx * 8 + (int) (Math.random() * 8), (int)y + yy * 8 + (int) (Math.random() * 8), 0, 0, 0, 2, 5));
+                {
+                    Sparkle sparkle;
+                    if (pool != null)
+                        sparkle = pool.sparkle((int)x + xx * 8 + pool.nextInt(8), (int)y + yy * 8 + pool.nextInt(8), 0, 0, 0, 2, 5);
+                    else
+                        sparkle = new Sparkle((int)x + xx * 8 + (int) (Math.random() * 8), (int)y + yy * 8 + (int) (Math.random() * 8), 0, 0, 0, 2, 5);
+                    spriteContext.addSprite(sparkle);
+                }
         }
 
         xPic = life & 3;
@@ -0,0 +1,67 @@
+package dk.itu.mario.engine.sprites;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.util.Arrays;
+
+/**
+ * The images of a set of sprites as they were after a tick, so they can be
+ * drawn on another thread while the next tick runs. Every entry keeps the
+ * old and new position of its sprite and is interpolated with alpha like
+ * Sprite used to do when it drew itself.
+ */
+public final class DrawList
+{
+    private Image[] images = new Image[64];
+    // xOld, yOld, x, y per entry
+    private float[] positions = new float[64 * 4];
+    // x offset, y offset, width, height per entry. Negative sizes flip.
+    private int[] shapes = new int[64 * 4];
+    private int size;
+
+    public void clear()
+    {
+        Arrays.fill(images, 0, size, null);
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds an image that is drawn at the interpolated position of sprite,
+     * moved by (xOffset, yOffset) and stretched to width x height
+     */
+    public void add(Image image, Sprite sprite, int xOffset, int yOffset, int width, int height)
+    {
+        if (size == images.length)
+        {
+            images = Arrays.copyOf(images, size * 2);
+            positions = Arrays.copyOf(positions, size * 8);
+            shapes = Arrays.copyOf(shapes, size * 8);
+        }
+        int i = size * 4;
+        images[size++] = image;
+        positions[i] = sprite.xOld;
+        positions[i + 1] = sprite.yOld;
+        positions[i + 2] = sprite.x;
+        positions[i + 3] = sprite.y;
+        shapes[i] = xOffset;
+        shapes[i + 1] = yOffset;
+        shapes[i + 2] = width;
+        shapes[i + 3] = height;
+    }
+
+    public void render(Graphics og, float alpha)
+    {
+        for (int n = 0; n < size; n++)
+        {
+            int i = n * 4;
+            int xPixel = (int) (positions[i] + (positions[i + 2] - positions[i]) * alpha) + shapes[i];
+            int yPixel = (int) (positions[i + 1] + (positions[i + 3] - positions[i + 1]) * alpha) + shapes[i + 1];
+            og.drawImage(images[n], xPixel, yPixel, shapes[i + 2], shapes[i + 3], null);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package dk.itu.mario.engine.sprites;
 
-import java.awt.Graphics;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 
 import dk.itu.mario.engine.Art;
@@ -42,7 +41,6 @@ public class Enemy extends Sprite
 
     public boolean winged = true;
     private int wingTime = 0;
-    private Random rand = new Random();
     private boolean flyUp = false;
 
     public boolean noFireballDeath;
@@ -143,9 +141,10 @@ public class Enemy extends Sprite
             if (deadTime == 0)
             {
                 deadTime = 1;
+                ParticlePool particles = world.particles;
                 for (int i = 0; i < 8; i++)
                 {
-                    world.addSprite(new Sparkle((int) (x + Math.random() * 16 - 8) + 4, (int) (y - Math.random() * 8) + 4, (float) (Math.random() * 2 - 1), (float) Math.random() * -1, 0, 1, 5));
+                    world.addSprite(particles.sparkle((int) (x + particles.nextFloat() * 16 - 8) + 4, (int) (y - particles.nextFloat() * 8) + 4, particles.nextFloat() * 2 - 1, particles.nextFloat() * -1, 0, 1, 5));
                 }
                 spriteContext.removeSprite(this);
             }
@@ -161,7 +160,6 @@ public class Enemy extends Sprite
         }
         
        	if (type == ENEMY_GREEN_KOOPA_FLYING && winged == true) {
-       		rand = new Random(rand.nextInt());
        		if (y <= 100 && flyUp == false) {
        			flyUp = true;
        		}
@@ -169,10 +167,10 @@ public class Enemy extends Sprite
        			flyUp = false;
        		}
        		if (flyUp) {
-       			y += 1.2 + rand.nextDouble();
+       			y += 1.2 + world.aiRandom.nextDouble();
        		}
        		else {
-       			y -= 1.2 + rand.nextDouble();
+       			y -= 1.2 + world.aiRandom.nextDouble();
        		}
     		return;
     	}
@@ -280,17 +278,13 @@ public class Enemy extends Sprite
         }
         if (xa > 0)
         {
-            if (isBlocking(x + xa + width, y + ya - height, xa, ya)) collide = true;
-            if (isBlocking(x + xa + width, y + ya - height / 2, xa, ya)) collide = true;
-            if (isBlocking(x + xa + width, y + ya, xa, ya)) collide = true;
+            if (isBlockingColumn(x + xa + width, y + ya - height, y + ya, xa, ya)) collide = true;
 
             if (avoidCliffs && onGround && !world.level.isBlocking((int) ((x + xa + width) / 16), (int) ((y) / 16 + 1), xa, 1)) collide = true;
         }
         if (xa < 0)
         {
-            if (isBlocking(x + xa - width, y + ya - height, xa, ya)) collide = true;
-            if (isBlocking(x + xa - width, y + ya - height / 2, xa, ya)) collide = true;
-            if (isBlocking(x + xa - width, y + ya, xa, ya)) collide = true;
+            if (isBlockingColumn(x + xa - width, y + ya - height, y + ya, xa, ya)) collide = true;
 
             if (avoidCliffs && onGround && !world.level.isBlocking((int) ((x + xa - width) / 16), (int) ((y) / 16 + 1), xa, 1)) collide = true;
         }
@@ -336,11 +330,29 @@ public class Enemy extends Sprite
 
         boolean blocking = world.level.isBlocking(x, y, xa, ya);
 
-        byte block = world.level.getBlock(x, y);
-
         return blocking;
     }
 
+    /**
+     * isBlocking for every tile from _y0 down to _y1 in one column. The
+     * points isBlocking used to be called with were less than a tile apart,
+     * so this tests the same tiles.
+     */
+    private boolean isBlockingColumn(float _x, float _y0, float _y1, float xa, float ya)
+    {
+        int x = (int) (_x / 16);
+        int y0 = (int) (_y0 / 16);
+        int y1 = (int) (_y1 / 16);
+        if (x == (int) (this.x / 16))
+        {
+            // Skip the tile the sprite is in
+            int y = (int) (this.y / 16);
+            if (y >= y0 && y <= y1)
+                return world.level.isBlockingColumn(x, y0, y - 1, xa, ya) || world.level.isBlockingColumn(x, y + 1, y1, xa, ya);
+        }
+        return world.level.isBlockingColumn(x, y0, y1, xa, ya);
+    }
+
     public boolean shellCollideCheck(Shell shell)
     {
         if (deadTime != 0) return false;
@@ -426,44 +438,37 @@ public class Enemy extends Sprite
         }
     }
 
-    public void render(Graphics og, float alpha)
+    public void draw(DrawList list)
     {
         if (winged)
         {
-            int xPixel = (int) (xOld + (x - xOld) * alpha) - xPicO;
-            int yPixel = (int) (yOld + (y - yOld) * alpha) - yPicO;
-
             if (type == Enemy.ENEMY_GREEN_KOOPA || type == Enemy.ENEMY_RED_KOOPA)
             {
             }
             else
             {
-                xFlipPic = !xFlipPic;
-                og.drawImage(sheet[wingTime / 4 % 2][4], xPixel + (xFlipPic ? wPic : 0) + (xFlipPic ? 10 : -10), yPixel + (yFlipPic ? hPic : 0) - 8, xFlipPic ? -wPic : wPic, yFlipPic ? -hPic : hPic, null);
-                xFlipPic = !xFlipPic;
+                boolean xFlipWing = !xFlipPic;
+                list.add(sheet[wingTime / 4 % 2][4], this, -xPicO + (xFlipWing ? wPic : 0) + (xFlipWing ? 10 : -10), -yPicO + (yFlipPic ? hPic : 0) - 8, xFlipWing ? -wPic : wPic, yFlipPic ? -hPic : hPic);
             }
         }
 
-        super.render(og, alpha);
+        super.draw(list);
 
         if (winged)
         {
-            int xPixel = (int) (xOld + (x - xOld) * alpha) - xPicO;
-            int yPixel = (int) (yOld + (y - yOld) * alpha) - yPicO;
-
             if (type == Enemy.ENEMY_GREEN_KOOPA || type == Enemy.ENEMY_RED_KOOPA || type == Enemy.ENEMY_GREEN_KOOPA_FLYING)
             {
-                og.drawImage(sheet[wingTime / 4 % 2][4], xPixel + (xFlipPic ? wPic : 0) + (xFlipPic ? 10 : -10), yPixel + (yFlipPic ? hPic : 0) - 10, xFlipPic ? -wPic : wPic, yFlipPic ? -hPic : hPic, null);
+                list.add(sheet[wingTime / 4 % 2][4], this, -xPicO + (xFlipPic ? wPic : 0) + (xFlipPic ? 10 : -10), -yPicO + (yFlipPic ? hPic : 0) - 10, xFlipPic ? -wPic : wPic, yFlipPic ? -hPic : hPic);
             }
             else
             {
-                og.drawImage(sheet[wingTime / 4 % 2][4], xPixel + (xFlipPic ? wPic : 0) + (xFlipPic ? 10 : -10), yPixel + (yFlipPic ? hPic : 0) - 8, xFlipPic ? -wPic : wPic, yFlipPic ? -hPic : hPic, null);
+                list.add(sheet[wingTime / 4 % 2][4], this, -xPicO + (xFlipPic ? wPic : 0) + (xFlipPic ? 10 : -10), -yPicO + (yFlipPic ? hPic : 0) - 8, xFlipPic ? -wPic : wPic, yFlipPic ? -hPic : hPic);
             }
         }
     }
 
-	public static int randomEnemy() {
+	public static int randomEnemy(SplittableRandom random) {
 		int[] enemies = new int[] {ENEMY_GOOMBA, ENEMY_GREEN_KOOPA, ENEMY_RED_KOOPA, ENEMY_SPIKY};
-		return enemies[new Random().nextInt(enemies.length)];
+		return enemies[random.nextInt(enemies.length)];
 	}
 }
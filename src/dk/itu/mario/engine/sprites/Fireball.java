@@ -28,6 +28,24 @@ public class Fireball extends Sprite
 
     public Fireball(LevelScene world, float x, float y, int facing)
     {
+        init(world, x, y, facing);
+    }
+
+    Fireball()
+    {
+    }
+
+    void init(LevelScene world, float x, float y, int facing)
+    {
+        runTime = 0;
+        onGround = false;
+        avoidCliffs = false;
+        anim = 0;
+        dead = false;
+        deadTime = 0;
+        xa = 0;
+        xFlipPic = false;
+
         sheet = Art.particles;
 
         this.x = x;
@@ -52,7 +70,8 @@ public class Fireball extends Sprite
         {
             for (int i = 0; i < 8; i++)
             {
-                world.addSprite(new Sparkle((int) (x + Math.random() * 8 - 4)+4, (int) (y + Math.random() * 8-4)+2, (float) Math.random() * 2 - 1-facing, (float) Math.random() *2 -1, 0, 1, 5));
+                ParticlePool particles = world.particles;
+                world.addSprite(particles.sparkle((int) (x + particles.nextFloat() * 8 - 4)+4, (int) (y + particles.nextFloat() * 8-4)+2, particles.nextFloat() * 2 - 1-facing, particles.nextFloat() *2 -1, 0, 1, 5));
             }
             spriteContext.removeSprite(this);
 
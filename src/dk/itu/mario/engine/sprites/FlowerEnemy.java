@@ -44,9 +44,10 @@ public class FlowerEnemy extends Enemy
             if (deadTime == 0)
             {
                 deadTime = 1;
+                ParticlePool particles = world.particles;
                 for (int i = 0; i < 8; i++)
                 {
-                    world.addSprite(new Sparkle((int) (x + Math.random() * 16 - 8) + 4, (int) (y - Math.random() * 8) + 4, (float) (Math.random() * 2 - 1), (float) Math.random() * -1, 0, 1, 5));
+                    world.addSprite(particles.sparkle((int) (x + particles.nextFloat() * 16 - 8) + 4, (int) (y - particles.nextFloat() * 8) + 4, particles.nextFloat() * 2 - 1, particles.nextFloat() * -1, 0, 1, 5));
                 }
                 spriteContext.removeSprite(this);
             }
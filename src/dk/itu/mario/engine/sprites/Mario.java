@@ -2,26 +2,15 @@ package dk.itu.mario.engine.sprites;
 
 import dk.itu.mario.engine.Art;
 import dk.itu.mario.engine.DataRecorder;
+import dk.itu.mario.engine.WorldContext;
 import dk.itu.mario.engine.sonar.FixedSoundSource;
 import dk.itu.mario.level.Level;
 import dk.itu.mario.level.MyLevel;
 import dk.itu.mario.scene.LevelScene;
-import dk.itu.mario.scene.Scene;
 
 public class Mario extends Sprite {
-	public static boolean large = false;
-	public static boolean fire = false;
-	public static int coins = 0;
-	public static int lives = 100;
-	public static String levelString = "none";
-
-	public static void resetStatic() {
-		large = false;
-		fire = false;
-		coins = 0;
-		lives = 100;
-		levelString = "none";
-	}
+	public boolean large = false;
+	public boolean fire = false;
 
 	public static final int KEY_LEFT = 0;
 	public static final int KEY_RIGHT = 1;
@@ -62,12 +51,12 @@ public class Mario extends Sprite {
 	private int invulnerableTime = 0;
 
 	public Sprite carried = null;
-	private static Mario instance;
+	private WorldContext context;
 
 	public Mario(LevelScene world) {
-		Mario.instance = this;
 		this.world = world;
-		keys = Scene.keys;
+		this.context = world.context;
+		keys = context.keys;
 		x = 32;
 		y = 0;
 
@@ -77,7 +66,7 @@ public class Mario extends Sprite {
 		// Mario.large = true;
 		// Mario.fire = true;
 
-		setLarge(Mario.large, Mario.fire);
+		setLarge(context.large, context.fire);
 	}
 
 	private boolean lastLarge;
@@ -86,8 +75,10 @@ public class Mario extends Sprite {
 	private boolean newFire;
 
 	private void blink(boolean on) {
-		Mario.large = on ? newLarge : lastLarge;
-		Mario.fire = on ? newFire : lastFire;
+		large = on ? newLarge : lastLarge;
+		fire = on ? newFire : lastFire;
+		context.large = large;
+		context.fire = fire;
 
 		if (large) {
 			sheet = Art.mario;
@@ -114,14 +105,14 @@ public class Mario extends Sprite {
 		if (!large)
 			fire = false;
 
-		lastLarge = Mario.large;
-		lastFire = Mario.fire;
+		lastLarge = this.large;
+		lastFire = this.fire;
 
-		Mario.large = large;
-		Mario.fire = fire;
+		this.large = large;
+		this.fire = fire;
 
-		newLarge = Mario.large;
-		newFire = Mario.fire;
+		newLarge = this.large;
+		newFire = this.fire;
 
 		blink(true);
 	}
@@ -318,11 +309,11 @@ public class Mario extends Sprite {
 			sliding = false;
 		}
 
-		if (keys[KEY_SPEED] && canShoot && Mario.fire
+		if (keys[KEY_SPEED] && canShoot && fire
 				&& world.fireballsOnScreen < 2) {
 			world.sound.play(Art.samples[Art.SAMPLE_MARIO_FIREBALL], this, 1,
 					1, 1);
-			world.addSprite(new Fireball(world, x + facing * 6, y - 20, facing));
+			world.addSprite(world.particles.fireball(world, x + facing * 6, y - 20, facing));
 		}
 
 		canShoot = !keys[KEY_SPEED];
@@ -341,10 +332,10 @@ public class Mario extends Sprite {
 
 		if (sliding) {
 			for (int i = 0; i < 1; i++) {
-				world.addSprite(new Sparkle((int) (x + Math.random() * 4 - 2)
-						+ facing * 8, (int) (y + Math.random() * 4) - 24,
-						(float) (Math.random() * 2 - 1),
-						(float) Math.random() * 1, 0, 1, 5));
+				world.addSprite(world.particles.sparkle((int) (x + world.particles.nextFloat() * 4 - 2)
+						+ facing * 8, (int) (y + world.particles.nextFloat() * 4) - 24,
+						world.particles.nextFloat() * 2 - 1,
+						world.particles.nextFloat() * 1, 0, 1, 5));
 			}
 			ya *= 0.5f;
 		}
@@ -441,11 +432,11 @@ public class Mario extends Sprite {
 
 			if (xa > 3 || xa < -3) {
 				for (int i = 0; i < 3; i++) {
-					world.addSprite(new Sparkle(
-							(int) (x + Math.random() * 8 - 4), (int) (y + Math
-									.random() * 4),
-							(float) (Math.random() * 2 - 1), (float) Math
-									.random() * -1, 0, 1, 5));
+					world.addSprite(world.particles.sparkle(
+							(int) (x + world.particles.nextFloat() * 8 - 4), (int) (y + world.particles
+									.nextFloat() * 4),
+							world.particles.nextFloat() * 2 - 1, world.particles
+									.nextFloat() * -1, 0, 1, 5));
 				}
 			}
 		}
@@ -578,15 +569,15 @@ public class Mario extends Sprite {
 			if (world.recorder != null)
 				world.recorder.recordCoin();
 
-			Mario.getCoin();
+			getCoin();
 			world.sound.play(Art.samples[Art.SAMPLE_GET_COIN],
 					new FixedSoundSource(x * 16 + 8, y * 16 + 8), 1, 1, 1);
 			world.level.setBlock(x, y, (byte) 0);
 			for (int xx = 0; xx < 2; xx++)
 				for (int yy = 0; yy < 2; yy++)
-					world.addSprite(new Sparkle(x * 16 + xx * 8
-							+ (int) (Math.random() * 8), y * 16 + yy * 8
-							+ (int) (Math.random() * 8), 0, 0, 0, 2, 5));
+					world.addSprite(world.particles.sparkle(x * 16 + xx * 8
+							+ world.particles.nextInt(8), y * 16 + yy * 8
+							+ world.particles.nextInt(8), 0, 0, 0, 2, 5));
 		}
 
 		if (blocking && ya < 0) {
@@ -747,6 +738,8 @@ public class Mario extends Sprite {
 
 		large = false;
 		fire = false;
+		context.large = false;
+		context.fire = false;
 	}
 
 	public void getFlower() {
@@ -771,7 +764,7 @@ public class Mario extends Sprite {
 				world.recorder.startFireRecord();
 			}
 		} else {
-			Mario.getCoin();
+			getCoin();
 			world.sound.play(Art.samples[Art.SAMPLE_GET_COIN], this, 1, 1, 1);
 		}
 	}
@@ -793,7 +786,7 @@ public class Mario extends Sprite {
 			}
 		} else {
 
-			Mario.getCoin();
+			getCoin();
 			world.sound.play(Art.samples[Art.SAMPLE_GET_COIN], this, 1, 1, 1);
 		}
 	}
@@ -834,6 +827,17 @@ public class Mario extends Sprite {
 			world.recorder.killStompRecord(bill);
 	}
 
+	public boolean isOnGround() {
+		return onGround;
+	}
+
+	/**
+	 * @return true if pressing jump now makes mario jump
+	 */
+	public boolean mayJump() {
+		return mayJump;
+	}
+
 	public byte getKeyMask() {
 		int mask = 0;
 		for (int i = 0; i < 7; i++) {
@@ -849,19 +853,18 @@ public class Mario extends Sprite {
 		}
 	}
 
-	public static void get1Up() {
-		instance.world.sound.play(Art.samples[Art.SAMPLE_MARIO_1UP], instance,
-				1, 1, 1);
-		lives++;
-		if (lives == 99) {
-			lives = 99;
+	public void get1Up() {
+		world.sound.play(Art.samples[Art.SAMPLE_MARIO_1UP], this, 1, 1, 1);
+		context.lives++;
+		if (context.lives == 99) {
+			context.lives = 99;
 		}
 	}
 
-	public static void getCoin() {
-		coins++;
-		if (coins == 100) {
-			coins = 0;
+	public void getCoin() {
+		context.coins++;
+		if (context.coins == 100) {
+			context.coins = 0;
 			get1Up();
 		}
 	}
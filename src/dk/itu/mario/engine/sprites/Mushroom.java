@@ -150,17 +150,13 @@ public class Mushroom extends Sprite
         }
         if (xa > 0)
         {
-            if (isBlocking(x + xa + width, y + ya - height, xa, ya)) collide = true;
-            if (isBlocking(x + xa + width, y + ya - height / 2, xa, ya)) collide = true;
-            if (isBlocking(x + xa + width, y + ya, xa, ya)) collide = true;
+            if (isBlockingColumn(x + xa + width, y + ya - height, y + ya, xa, ya)) collide = true;
 
             if (avoidCliffs && onGround && !world.level.isBlocking((int) ((x + xa + width) / 16), (int) ((y) / 16 + 1), xa, 1)) collide = true;
         }
         if (xa < 0)
         {
-            if (isBlocking(x + xa - width, y + ya - height, xa, ya)) collide = true;
-            if (isBlocking(x + xa - width, y + ya - height / 2, xa, ya)) collide = true;
-            if (isBlocking(x + xa - width, y + ya, xa, ya)) collide = true;
+            if (isBlockingColumn(x + xa - width, y + ya - height, y + ya, xa, ya)) collide = true;
 
             if (avoidCliffs && onGround && !world.level.isBlocking((int) ((x + xa - width) / 16), (int) ((y) / 16 + 1), xa, 1)) collide = true;
         }
@@ -206,11 +202,29 @@ public class Mushroom extends Sprite
 
         boolean blocking = world.level.isBlocking(x, y, xa, ya);
 
-        byte block = world.level.getBlock(x, y);
-
         return blocking;
     }
 
+    /**
+     * isBlocking for every tile from _y0 down to _y1 in one column. The
+     * points isBlocking used to be called with were less than a tile apart,
+     * so this tests the same tiles.
+     */
+    private boolean isBlockingColumn(float _x, float _y0, float _y1, float xa, float ya)
+    {
+        int x = (int) (_x / 16);
+        int y0 = (int) (_y0 / 16);
+        int y1 = (int) (_y1 / 16);
+        if (x == (int) (this.x / 16))
+        {
+            // Skip the tile the sprite is in
+            int y = (int) (this.y / 16);
+            if (y >= y0 && y <= y1)
+                return world.level.isBlockingColumn(x, y0, y - 1, xa, ya) || world.level.isBlockingColumn(x, y + 1, y1, xa, ya);
+        }
+        return world.level.isBlockingColumn(x, y0, y1, xa, ya);
+    }
+
     public void bumpCheck(int xTile, int yTile)
     {
         if (x + width > xTile * 16 && x - width < xTile * 16 + 16 && yTile==(int)((y-1)/16))
@@ -13,6 +13,15 @@ public class Particle extends Sprite
     }
 
     public Particle(int x, int y, float xa, float ya, int xPic, int yPic)
+    {
+        init(x, y, xa, ya, xPic, yPic);
+    }
+
+    Particle()
+    {
+    }
+
+    void init(int x, int y, float xa, float ya, int xPic, int yPic)
     {
         sheet = Art.particles;
         this.x = x;
@@ -31,7 +40,7 @@ public class Particle extends Sprite
 
     public void move()
     {
-        if (life--<0) Sprite.spriteContext.removeSprite(this);
+        if (life--<0) spriteContext.removeSprite(this);
         x+=xa;
         y+=ya;
         ya*=0.95f;
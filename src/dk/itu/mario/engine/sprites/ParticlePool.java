@@ -0,0 +1,113 @@
+package dk.itu.mario.engine.sprites;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import dk.itu.mario.scene.LevelScene;
+
+/**
+ * Recycles the short lived effect sprites of one scene: sparkles, brick
+ * particles, coin animations and fireballs. A sprite handed out here goes
+ * back to the pool when the scene's SpriteStore drops it, so a scene in a
+ * steady state stops allocating them.
+ *
+ * Sprites made with the public constructors are never recycled.
+ */
+public final class ParticlePool
+{
+    private final SplittableRandom random;
+
+    private Sparkle[] sparkles = new Sparkle[32];
+    private int sparkleCount;
+    private Particle[] particles = new Particle[8];
+    private int particleCount;
+    private CoinAnim[] coinAnims = new CoinAnim[4];
+    private int coinAnimCount;
+    private Fireball[] fireballs = new Fireball[4];
+    private int fireballCount;
+
+    public ParticlePool(SplittableRandom random)
+    {
+        this.random = random;
+    }
+
+    public Sparkle sparkle(int x, int y, float xa, float ya, int xPic, int yPic, int timeSpan)
+    {
+        Sparkle sparkle = sparkleCount > 0 ? sparkles[--sparkleCount] : new Sparkle();
+        sparkle.pool = this;
+        sparkle.init(x, y, xa, ya, xPic, yPic, 10 + random.nextInt(timeSpan));
+        return sparkle;
+    }
+
+    public Particle particle(int x, int y, float xa, float ya)
+    {
+        Particle particle = particleCount > 0 ? particles[--particleCount] : new Particle();
+        particle.pool = this;
+        particle.init(x, y, xa, ya, random.nextInt(2), 0);
+        return particle;
+    }
+
+    public CoinAnim coinAnim(int xTile, int yTile)
+    {
+        CoinAnim coinAnim = coinAnimCount > 0 ? coinAnims[--coinAnimCount] : new CoinAnim();
+        coinAnim.pool = this;
+        coinAnim.init(xTile, yTile);
+        return coinAnim;
+    }
+
+    public Fireball fireball(LevelScene world, float x, float y, int facing)
+    {
+        Fireball fireball = fireballCount > 0 ? fireballs[--fireballCount] : new Fireball();
+        fireball.pool = this;
+        fireball.init(world, x, y, facing);
+        return fireball;
+    }
+
+    /**
+     * @return a random int in [0, n) from the particle stream
+     */
+    public int nextInt(int n)
+    {
+        return random.nextInt(n);
+    }
+
+    /**
+     * @return a random float in [0, 1) from the particle stream
+     */
+    public float nextFloat()
+    {
+        return (float) random.nextDouble();
+    }
+
+    /**
+     * Takes back a sprite the scene no longer holds. Anything that did not
+     * come from this pool is ignored.
+     */
+    void recycle(Sprite sprite)
+    {
+        if (sprite.pool != this) return;
+        sprite.pool = null;
+        sprite.spriteContext = null;
+
+        if (sprite instanceof Sparkle)
+        {
+            if (sparkleCount == sparkles.length) sparkles = Arrays.copyOf(sparkles, sparkleCount * 2);
+            sparkles[sparkleCount++] = (Sparkle) sprite;
+        }
+        else if (sprite instanceof Particle)
+        {
+            if (particleCount == particles.length) particles = Arrays.copyOf(particles, particleCount * 2);
+            particles[particleCount++] = (Particle) sprite;
+        }
+        else if (sprite instanceof CoinAnim)
+        {
+            if (coinAnimCount == coinAnims.length) coinAnims = Arrays.copyOf(coinAnims, coinAnimCount * 2);
+            coinAnims[coinAnimCount++] = (CoinAnim) sprite;
+        }
+        else if (sprite instanceof Fireball)
+        {
+            if (fireballCount == fireballs.length) fireballs = Arrays.copyOf(fireballs, fireballCount * 2);
+            fireballs[fireballCount++] = (Fireball) sprite;
+        }
+    }
+}
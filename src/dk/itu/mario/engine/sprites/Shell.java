@@ -137,9 +137,10 @@ public class Shell extends Sprite
             if (deadTime == 0)
             {
                 deadTime = 1;
+                ParticlePool particles = world.particles;
                 for (int i = 0; i < 8; i++)
                 {
-                    world.addSprite(new Sparkle((int) (x + Math.random() * 16 - 8) + 4, (int) (y - Math.random() * 8) + 4, (float) (Math.random() * 2 - 1), (float) Math.random() * -1, 0, 1, 5));
+                    world.addSprite(particles.sparkle((int) (x + particles.nextFloat() * 16 - 8) + 4, (int) (y - particles.nextFloat() * 8) + 4, particles.nextFloat() * 2 - 1, particles.nextFloat() * -1, 0, 1, 5));
                 }
                 spriteContext.removeSprite(this);
             }
@@ -300,8 +301,6 @@ public class Shell extends Sprite
 
         boolean blocking = world.level.isBlocking(x, y, xa, ya);
 
-        byte block = world.level.getBlock(x, y);
-
         if (blocking && ya == 0 && xa!=0)
         {
             world.bump(x, y, true);
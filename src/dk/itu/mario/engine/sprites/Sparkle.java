@@ -14,6 +14,15 @@ public class Sparkle extends Sprite
     }
 
     public Sparkle(int x, int y, float xa, float ya, int xPic, int yPic, int timeSpan)
+    {
+        init(x, y, xa, ya, xPic, yPic, 10+(int)(Math.random()*timeSpan));
+    }
+
+    Sparkle()
+    {
+    }
+
+    void init(int x, int y, float xa, float ya, int xPic, int yPic, int life)
     {
         sheet = Art.particles;
         this.x = x;
@@ -28,7 +37,7 @@ public class Sparkle extends Sprite
 
         wPic = 8;
         hPic = 8;
-        life = 10+(int)(Math.random()*timeSpan);
+        this.life = life;
     }
 
     public void move()
@@ -38,7 +47,7 @@ public class Sparkle extends Sprite
         else
             xPic = xPicStart+(10-life)*4/10;
 
-        if (life--<0) Sprite.spriteContext.removeSprite(this);
+        if (life--<0) spriteContext.removeSprite(this);
 
         x+=xa;
         y+=ya;
@@ -1,6 +1,5 @@
 package dk.itu.mario.engine.sprites;
 
-import java.awt.Graphics;
 import java.awt.Image;
 
 
@@ -11,7 +10,7 @@ import dk.itu.mario.engine.sonar.SoundSource;
 
 public class Sprite implements SoundSource
 {
-    public static SpriteContext spriteContext;
+    public SpriteContext spriteContext;
 
     public float xOld, yOld, x, y, xa, ya;
 
@@ -28,20 +27,27 @@ public class Sprite implements SoundSource
 
     public SpriteTemplate spriteTemplate;
 
+    // Bookkeeping for the SpriteStore that holds this sprite
+    int storeSlot = -1;
+    boolean removed = false;
+
+    // Set while the sprite is on loan from a ParticlePool
+    ParticlePool pool;
+
     public void move()
     {
         x+=xa;
         y+=ya;
     }
 
-    public void render(Graphics og, float alpha)
+    /**
+     * Adds the images of this sprite to list, to be drawn after the tick
+     */
+    public void draw(DrawList list)
     {
         if (!visible) return;
 
-        int xPixel = (int)(xOld+(x-xOld)*alpha)-xPicO;
-        int yPixel = (int)(yOld+(y-yOld)*alpha)-yPicO;
-
-        og.drawImage(sheet[xPic][yPic], xPixel+(xFlipPic?wPic:0), yPixel+(yFlipPic?hPic:0), xFlipPic?-wPic:wPic, yFlipPic?-hPic:hPic, null);
+        list.add(sheet[xPic][yPic], this, -xPicO+(xFlipPic?wPic:0), -yPicO+(yFlipPic?hPic:0), xFlipPic?-wPic:wPic, yFlipPic?-hPic:hPic);
     }
 
 /*  private void blit(Graphics og, Image bitmap, int x0, int y0, int x1, int y1, int w, int h)
@@ -0,0 +1,153 @@
+package dk.itu.mario.engine.sprites;
+
+import java.util.Arrays;
+
+/**
+ * The live sprites of a scene. Sprites added or removed during a tick are
+ * queued and applied in one pass by flush(), with the same result the old
+ * ArrayList code gave: new sprites go in front, in the order they were
+ * added, and the rest keep their order. Keeping that order matters because
+ * it decides which sprite ticks and draws first and which enemy a fireball
+ * hits.
+ *
+ * Each sprite remembers its slot, so contains() is a single array read.
+ * Removing only marks the sprite, and flush() compacts the array once
+ * instead of shifting it per change. After the arrays have grown to the
+ * largest sprite count seen, nothing here allocates.
+ *
+ * Pooled sprites that are removed go back to their pool at the end of
+ * flush(), once nothing in the store refers to them any more.
+ */
+public final class SpriteStore
+{
+    private final ParticlePool pool;
+
+    private Sprite[] items = new Sprite[64];
+    private Sprite[] spare = new Sprite[64];
+    private int size;
+
+    private Sprite[] toAdd = new Sprite[16];
+    private int toAddSize;
+    private Sprite[] toRemove = new Sprite[16];
+    private int toRemoveSize;
+
+    public SpriteStore()
+    {
+        this(null);
+    }
+
+    public SpriteStore(ParticlePool pool)
+    {
+        this.pool = pool;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public Sprite get(int i)
+    {
+        return items[i];
+    }
+
+    /**
+     * @return true if the sprite is in the store. Queued additions are not
+     *         in it until the next flush, queued removals still are.
+     */
+    public boolean contains(Sprite sprite)
+    {
+        int slot = sprite.storeSlot;
+        return slot >= 0 && slot < size && items[slot] == sprite;
+    }
+
+    /**
+     * Appends the sprite right away, outside of the tick
+     */
+    public void add(Sprite sprite)
+    {
+        if (size == items.length)
+            items = Arrays.copyOf(items, size * 2);
+        sprite.storeSlot = size;
+        items[size++] = sprite;
+    }
+
+    public void addLater(Sprite sprite)
+    {
+        if (toAddSize == toAdd.length)
+            toAdd = Arrays.copyOf(toAdd, toAddSize * 2);
+        toAdd[toAddSize++] = sprite;
+    }
+
+    public void removeLater(Sprite sprite)
+    {
+        if (toRemoveSize == toRemove.length)
+            toRemove = Arrays.copyOf(toRemove, toRemoveSize * 2);
+        toRemove[toRemoveSize++] = sprite;
+    }
+
+    /**
+     * Drops all sprites in the store. Queued changes are kept.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            items[i].storeSlot = -1;
+            items[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Applies the queued additions and removals
+     */
+    public void flush()
+    {
+        if (toAddSize == 0 && toRemoveSize == 0) return;
+
+        for (int i = 0; i < toRemoveSize; i++)
+            toRemove[i].removed = true;
+
+        int capacity = size + toAddSize;
+        if (spare.length < capacity)
+            spare = new Sprite[Math.max(capacity, spare.length * 2)];
+
+        int n = 0;
+        for (int i = 0; i < toAddSize; i++)
+            n = keep(toAdd[i], n);
+        for (int i = 0; i < size; i++)
+            n = keep(items[i], n);
+
+        for (int i = 0; i < toRemoveSize; i++)
+        {
+            Sprite sprite = toRemove[i];
+            toRemove[i] = null;
+            // A sprite can be queued twice, only the first entry recycles it
+            if (!sprite.removed) continue;
+            sprite.removed = false;
+            sprite.storeSlot = -1;
+            if (pool != null && sprite.pool == pool)
+                pool.recycle(sprite);
+        }
+        for (int i = 0; i < toAddSize; i++)
+            toAdd[i] = null;
+        toAddSize = 0;
+        toRemoveSize = 0;
+
+        // The old array becomes the spare for the next flush
+        Arrays.fill(items, 0, size, null);
+        Sprite[] old = items;
+        items = spare;
+        spare = old;
+        size = n;
+    }
+
+    private int keep(Sprite sprite, int n)
+    {
+        if (sprite.removed) return n;
+        sprite.storeSlot = n;
+        spare[n] = sprite;
+        return n + 1;
+    }
+}
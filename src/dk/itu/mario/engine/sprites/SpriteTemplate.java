@@ -12,9 +12,6 @@ public class SpriteTemplate
 	public static final int CANNON_BALL		= 5;
 	public static final int CHOMP_FLOWER	= 6;
 
-	public static int enemiesSpawned = 0;
-	public static int enemiesMax = 1000;
-
 	public boolean hasSpawned = false;
 
     public int lastVisibleTick = -1;
@@ -31,9 +28,14 @@ public class SpriteTemplate
         this.winged = winged;
     }
 
+    public boolean isWinged()
+    {
+        return winged;
+    }
+
     public void spawn(LevelScene world, int x, int y, int dir)
     {
-        if (isDead || enemiesSpawned >= enemiesMax) return;
+        if (isDead || world.context.enemiesSpawned >= world.context.enemiesMax) return;
 
         if (type==Enemy.ENEMY_FLOWER)
         {
@@ -53,7 +55,7 @@ public class SpriteTemplate
         world.addSprite(sprite);
 
         if(!hasSpawned)
-        	enemiesSpawned++;
+        	world.context.enemiesSpawned++;
 
         hasSpawned = true;
     }
@@ -0,0 +1,353 @@
+package dk.itu.mario.level;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import maven.code.Configuration;
+import maven.code.Configurations;
+
+/**
+ * Where mario died, by configuration id and column within the
+ * configuration, counted over every session that shares the file.
+ *
+ * Deaths are added to striped counters, so sessions on different threads
+ * rarely touch the same cache line. flush() adds them to the file under a
+ * file lock and reads back the totals, which then include the deaths of
+ * every other process flushing to it. The file is memory-mapped:
+ *
+ *   int  MAGIC
+ *   int  configs, the number of configurations
+ *   int  OFFSETS
+ *   int  hashCode of Configurations.signature()
+ *   long configs * OFFSETS totals, in native order, configuration id major
+ *
+ * Ids belong to other chunks once the configurations change, so a file
+ * counted with other configurations is replaced by an empty one.
+ *
+ * Reading never locks: the totals of the last flush are an immutable
+ * array and the deaths since are atomics. A read made while a flush is
+ * running can miss the deaths being flushed.
+ */
+public class DeathHeatmap {
+
+	public static final int MAGIC = 0x4d444831; // "MDH1"
+
+	// Columns counted per configuration, deaths further in count as the last
+	public static final int OFFSETS = 32;
+
+	private static final int HEADER_SIZE = 16;
+
+	// Stripes per cell, a power of two
+	private static final int STRIPES = 8;
+
+	// What the death weights add up to, about the deaths of a session
+	public static final int DEATH_WEIGHT = 32;
+
+	public static final String DEFAULT_FILE = "deaths.heatmap";
+	public static final long FLUSH_INTERVAL = 10000;
+
+	private static DeathHeatmap defaultHeatmap;
+
+	private final File file;
+	// Configuration ids counted, and the cells of the file
+	private final int configs;
+	private final int cells;
+	private final int signature;
+	private MappedByteBuffer mapped;
+	private FileChannel channel;
+
+	// Deaths not flushed yet. One row per configuration id, made on its
+	// first death, holding OFFSETS * STRIPES counters offset major.
+	private final AtomicReferenceArray<AtomicLongArray> pending;
+
+	// The totals of the last flush, replaced and never changed
+	private volatile long[] flushed;
+
+	/**
+	 * Counts the deaths of every configuration in Configurations.configs()
+	 *
+	 * @param file the file shared with the other sessions, null to only
+	 *             count the deaths of this process
+	 */
+	public DeathHeatmap(File file) throws IOException {
+		this.file = file;
+		this.configs = Configurations.configs().size();
+		this.cells = configs * OFFSETS;
+		this.signature = Configurations.signature().hashCode();
+		this.pending = new AtomicReferenceArray<AtomicLongArray>(configs);
+		this.flushed = new long[cells];
+		if (file != null) {
+			open();
+			flush();
+		}
+	}
+
+	/**
+	 * The heatmap in DEFAULT_FILE, next to player.txt, flushed every
+	 * FLUSH_INTERVAL ms and when the JVM exits. If the file can not be
+	 * opened the deaths are only counted in memory.
+	 */
+	public static synchronized DeathHeatmap getDefault() {
+		if (defaultHeatmap == null) {
+			try {
+				defaultHeatmap = new DeathHeatmap(new File(DEFAULT_FILE));
+			} catch (IOException e) {
+				e.printStackTrace();
+				try {
+					defaultHeatmap = new DeathHeatmap(null);
+				} catch (IOException impossible) {
+					throw new IllegalStateException(impossible);
+				}
+			}
+			defaultHeatmap.startFlushing(FLUSH_INTERVAL);
+		}
+		return defaultHeatmap;
+	}
+
+	private void open() throws IOException {
+		while (!tryOpen()) {
+		}
+	}
+
+	/**
+	 * @return false if the file was replaced and has to be opened again
+	 */
+	private boolean tryOpen() throws IOException {
+		long size = HEADER_SIZE + cells * 8L;
+		Object key = fileKey();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		boolean opened = false;
+		FileLock lock = channel.lock();
+		try {
+			// Another process replaced the file before we got the lock
+			if (key != null && !key.equals(fileKey()))
+				return false;
+
+			if (channel.size() == 0) {
+				channel.write(header(), 0);
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+				channel.read(header, 0);
+				if (header.getInt(0) != MAGIC || header.getInt(8) != OFFSETS)
+					throw new IOException(file + " is not a heatmap");
+				if (header.getInt(4) != configs || header.getInt(12) != signature || channel.size() != size) {
+					System.err.println(file + " was counted with other configurations, starting over");
+					replace(size);
+					return false;
+				}
+			}
+			mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			mapped.order(ByteOrder.nativeOrder());
+			opened = true;
+			return true;
+		} finally {
+			lock.release();
+			if (!opened)
+				channel.close();
+		}
+	}
+
+	private ByteBuffer header() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC).putInt(configs).putInt(OFFSETS).putInt(signature);
+		header.flip();
+		return header;
+	}
+
+	/**
+	 * Moves an empty heatmap over the file. Processes that still have the
+	 * old file open go on counting in it.
+	 */
+	private void replace(long size) throws IOException {
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+			try {
+				raf.setLength(size);
+				raf.getChannel().write(header(), 0);
+			} finally {
+				raf.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @return what identifies the file the path leads to, null if it does
+	 *         not exist or the file system has no such thing
+	 */
+	private Object fileKey() throws IOException {
+		try {
+			return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Counts a death offset columns into the configuration. Safe to call
+	 * from any thread.
+	 */
+	public void record(int configId, int offset) {
+		if (configId < 0 || configId >= configs)
+			return;
+		offset = Math.max(0, Math.min(OFFSETS - 1, offset));
+		AtomicLongArray row = pending.get(configId);
+		if (row == null) {
+			pending.compareAndSet(configId, null, new AtomicLongArray(OFFSETS * STRIPES));
+			row = pending.get(configId);
+		}
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		row.incrementAndGet(offset * STRIPES + stripe);
+	}
+
+	/**
+	 * @return the deaths offset columns into the configuration, 0 for a
+	 *         configuration or offset that is not counted
+	 */
+	public long count(int configId, int offset) {
+		if (configId < 0 || configId >= configs || offset < 0 || offset >= OFFSETS)
+			return 0;
+		long count = flushed[configId * OFFSETS + offset];
+		AtomicLongArray row = pending.get(configId);
+		if (row != null) {
+			for (int s = 0; s < STRIPES; s++)
+				count += row.get(offset * STRIPES + s);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the deaths of every configuration at every offset, indexed
+	 *         configId * OFFSETS + offset
+	 */
+	public long[] snapshot() {
+		long[] counts = flushed.clone();
+		for (int c = 0; c < configs; c++) {
+			AtomicLongArray row = pending.get(c);
+			if (row == null)
+				continue;
+			for (int i = 0; i < OFFSETS * STRIPES; i++)
+				counts[c * OFFSETS + i / STRIPES] += row.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the deaths per configuration scaled so they add up to about
+	 *         DEATH_WEIGHT, for the level generator. The totals grow without
+	 *         bound over every session, where a level expects the deaths of
+	 *         one session. Only where mario dies most counts, and small
+	 *         changes in the totals do not change the weights.
+	 */
+	public Map<Configuration, Integer> deathWeights() {
+		long[] counts = snapshot();
+		long[] totals = new long[configs];
+		long all = 0;
+		for (int c = 0; c < configs; c++) {
+			for (int offset = 0; offset < OFFSETS; offset++)
+				totals[c] += counts[c * OFFSETS + offset];
+			all += totals[c];
+		}
+
+		Map<Configuration, Integer> weights = new HashMap<Configuration, Integer>();
+		if (all == 0)
+			return weights;
+		for (Configuration c : Configurations.configs()) {
+			if (c.id >= configs)
+				continue;
+			int weight = (int) ((totals[c.id] * DEATH_WEIGHT + all / 2) / all);
+			if (weight > 0)
+				weights.put(c, weight);
+		}
+		return weights;
+	}
+
+	/**
+	 * Adds the deaths since the last flush to the file and reads back the
+	 * totals of every session sharing it
+	 */
+	public synchronized void flush() throws IOException {
+		if (mapped == null)
+			return;
+
+		long[] drained = new long[cells];
+		for (int c = 0; c < configs; c++) {
+			AtomicLongArray row = pending.get(c);
+			if (row == null)
+				continue;
+			for (int i = 0; i < OFFSETS * STRIPES; i++) {
+				if (row.get(i) != 0)
+					drained[c * OFFSETS + i / STRIPES] += row.getAndSet(i, 0);
+			}
+		}
+
+		long[] totals = new long[cells];
+		FileLock lock = channel.lock();
+		try {
+			for (int i = 0; i < cells; i++) {
+				int at = HEADER_SIZE + i * 8;
+				long total = mapped.getLong(at) + drained[i];
+				if (drained[i] != 0)
+					mapped.putLong(at, total);
+				totals[i] = total;
+			}
+			mapped.force();
+		} finally {
+			lock.release();
+		}
+		flushed = totals;
+	}
+
+	/**
+	 * Flushes every interval ms on a daemon thread, and once more when the
+	 * JVM exits
+	 */
+	public void startFlushing(final long interval) {
+		if (file == null)
+			return;
+		Thread flusher = new Thread("Heatmap Flush") {
+			public void run() {
+				while (true) {
+					try {
+						Thread.sleep(interval);
+						flush();
+					} catch (InterruptedException e) {
+						return;
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		};
+		flusher.setDaemon(true);
+		flusher.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread("Heatmap Flush On Exit") {
+			public void run() {
+				try {
+					flush();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+}
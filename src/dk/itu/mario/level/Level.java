@@ -1,9 +1,11 @@
 package dk.itu.mario.level;
 
 import java.io.*;
+import java.util.Arrays;
 
 import dk.itu.mario.MarioInterface.LevelInterface;
 import dk.itu.mario.engine.sprites.SpriteTemplate;
+import dk.itu.mario.res.ResourcesManager;
 
 public class Level implements LevelInterface {
 
@@ -45,17 +47,41 @@ public class Level implements LevelInterface {
 	protected int width;
 	protected int height;
 
-	// This map of WIDTH * HEIGHT that contains the level's design
-	private byte[][] map;
+	// The level's design, WIDTH * HEIGHT tiles stored column by column so
+	// that the tiles of one column are next to each other. Tile (x, y) is at
+	// map[x * height + y].
+	private byte[] map;
 
-	// This is a map of WIDTH * HEIGHT that contains the placement and type
-	// enemies
+	// The placement and type of enemies. Most columns have none, so a
+	// column's array is only allocated once a template is placed in it.
 	private SpriteTemplate[][] spriteTemplates;
 
+	// Changes made since snapshot(), so revertToSnapshot() can undo them.
+	// Each entry is (tile index << 8) | previous tile. Null when no snapshot
+	// has been taken.
+	private int[] journal;
+	private int journalSize;
+
+	// Solidity of every tile as bitmaps, bit i of each array is tile map[i]:
+	// tiles that block from every side, tiles that block sprites moving down
+	// onto them and tiles that block sprites moving up into them. Built by
+	// the first collision query and kept in sync by setBlock, so collision
+	// tests never look at TILE_BEHAVIORS.
+	private long[] blockAll;
+	private long[] blockUpper;
+	private long[] blockLower;
+	private int solidityVersion;
+
+	// Changed by loadBehaviors, so levels rebuild their bitmaps
+	private static volatile int behaviorsVersion = 0;
+
 	// These are the place of the end of the level
 	protected int xExit;
 	protected int yExit;
 
+	// Columns from here on have not been generated yet, see generateUpTo
+	protected int generatedWidth = Integer.MAX_VALUE;
+
 	public Level() {
 
 	}
@@ -66,12 +92,35 @@ public class Level implements LevelInterface {
 
 		xExit = 10;
 		yExit = 10;
-		map = new byte[width][height];
-		spriteTemplates = new SpriteTemplate[width][height];
+		map = new byte[width * height];
+		spriteTemplates = new SpriteTemplate[width][];
 	}
 
 	public static void loadBehaviors(DataInputStream dis) throws IOException {
 		dis.readFully(Level.TILE_BEHAVIORS);
+		behaviorsVersion++;
+	}
+
+	private static boolean behaviorsLoaded = false;
+
+	/**
+	 * Loads the default tile behaviors the first time it is called. The table
+	 * is shared by every level and only read after this, so concurrently
+	 * running scenes can safely call it from their init.
+	 */
+	public static synchronized void initBehaviors() {
+		if (behaviorsLoaded)
+			return;
+		InputStream is = ResourcesManager.class.getResourceAsStream("res/tiles.dat");
+		if (is == null)
+			throw new IllegalStateException("res/tiles.dat not found on the classpath");
+		try {
+			loadBehaviors(new DataInputStream(is));
+			is.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to load tile behaviors", e);
+		}
+		behaviorsLoaded = true;
 	}
 
 	public static void saveBehaviors(DataOutputStream dos) throws IOException {
@@ -84,25 +133,97 @@ public class Level implements LevelInterface {
 	public Level clone() throws CloneNotSupportedException {
 
 		Level clone = new Level(width, height);
+		copyTilesTo(clone);
+		return clone;
+
+	}
 
-		clone.map = new byte[width][height];
-		clone.spriteTemplates = new SpriteTemplate[width][height];
+	/**
+	 * Copies the tiles, sprite templates and exit of this level into a level
+	 * of the same size. The templates themselves are shared, as before.
+	 */
+	protected void copyTilesTo(Level clone) {
+		System.arraycopy(map, 0, clone.map, 0, map.length);
+		for (int x = 0; x < width; x++) {
+			SpriteTemplate[] column = spriteTemplates[x];
+			clone.spriteTemplates[x] = column == null ? null : column.clone();
+		}
 		clone.xExit = xExit;
 		clone.yExit = yExit;
+	}
 
-		for (int i = 0; i < map.length; i++)
-			for (int j = 0; j < map[i].length; j++) {
-				clone.map[i][j] = map[i][j];
-				clone.spriteTemplates[i][j] = spriteTemplates[i][j];
+	/**
+	 * Writes the tiles and sprite templates, the part of the level that
+	 * generating it made. Templates are written as their position, type and
+	 * whether they are winged.
+	 */
+	protected void writeTiles(DataOutputStream dos) throws IOException {
+		dos.write(map);
+		int templates = 0;
+		for (int x = 0; x < width; x++) {
+			SpriteTemplate[] column = spriteTemplates[x];
+			for (int y = 0; column != null && y < height; y++) {
+				if (column[y] != null)
+					templates++;
 			}
+		}
+		dos.writeInt(templates);
+		for (int x = 0; x < width; x++) {
+			SpriteTemplate[] column = spriteTemplates[x];
+			for (int y = 0; column != null && y < height; y++) {
+				SpriteTemplate st = column[y];
+				if (st == null)
+					continue;
+				dos.writeInt(x * height + y);
+				dos.writeByte(st.type);
+				dos.writeBoolean(st.isWinged());
+			}
+		}
+	}
 
-		return clone;
-
+	/**
+	 * Reads what writeTiles wrote into a new level of the same size. The
+	 * templates are new, so nothing is shared with the level written.
+	 */
+	protected void readTiles(DataInputStream dis) throws IOException {
+		dis.readFully(map);
+		blockAll = null;
+		int templates = dis.readInt();
+		for (int i = 0; i < templates; i++) {
+			int at = dis.readInt();
+			if (at < 0 || at >= map.length)
+				throw new IOException("Sprite template outside the level");
+			int type = dis.readByte();
+			setSpriteTemplate(at / height, at % height, new SpriteTemplate(type, dis.readBoolean()));
+		}
 	}
 
 	public void tick() {
 	}
 
+	/**
+	 * Makes sure the columns up to x have been generated. Most levels are
+	 * complete when they are made, levels that generate their columns as
+	 * they are played override generate.
+	 */
+	public final void generateUpTo(int x) {
+		if (x < generatedWidth)
+			return;
+		// Generated tiles are part of the level, not changes made while
+		// playing it, so revertToSnapshot must keep them
+		int[] playJournal = journal;
+		journal = null;
+		generate(x);
+		journal = playJournal;
+	}
+
+	/**
+	 * Generates at least the columns up to x and moves generatedWidth past
+	 * them
+	 */
+	protected void generate(int x) {
+	}
+
 	public byte getBlockCapped(int x, int y) {
 		if (x < 0)
 			x = 0;
@@ -112,10 +233,20 @@ public class Level implements LevelInterface {
 			x = width - 1;
 		if (y >= height)
 			y = height - 1;
-		return map[x][y];
+		return map[x * height + y];
+	}
+
+	/**
+	 * Returns the tile at (x, y) without any bounds handling. Only for
+	 * callers that already know 0 <= x < width and 0 <= y < height.
+	 */
+	public final byte getBlockUnchecked(int x, int y) {
+		return map[x * height + y];
 	}
 
 	public byte getBlock(int x, int y) {
+		if (x >= 0 && x < width && y >= 0 && y < height)
+			return map[x * height + y];
 		if (x < 0)
 			x = 0;
 		if (y < 0)
@@ -124,7 +255,7 @@ public class Level implements LevelInterface {
 			x = width - 1;
 		if (y >= height)
 			y = height - 1;
-		return map[x][y];
+		return map[x * height + y];
 	}
 	
 	/**
@@ -134,62 +265,244 @@ public class Level implements LevelInterface {
 	 * @param b
 	 */
 	public void setBlock(int x, int y, byte b) {
-		if (x < 0)
+		if (x < 0 || y < 0 || x >= width || y >= height)
 			return;
-		if (y < 0)
+		int i = x * height + y;
+		if (journal != null && map[i] != b) {
+			if (journalSize == journal.length)
+				journal = Arrays.copyOf(journal, journalSize * 2);
+			journal[journalSize++] = i << 8 | (map[i] & 0xff);
+		}
+		map[i] = b;
+		if (blockAll != null)
+			updateSolidity(i);
+	}
+
+	/**
+	 * Copies the w * h tiles from (x0, y0) into into, column by column like
+	 * the map, so tile (x0 + i, y0 + j) goes to into[i * h + j]. Tiles
+	 * outside the level are what getBlock gives for them.
+	 */
+	public void copyWindow(int x0, int y0, int w, int h, byte[] into) {
+		int from = Math.max(0, Math.min(-y0, h));
+		int to = Math.max(from, Math.min(height - y0, h));
+		for (int i = 0; i < w; i++) {
+			int x = Math.max(0, Math.min(width - 1, x0 + i));
+			int column = i * h;
+			Arrays.fill(into, column, column + from, (byte) 0);
+			if (to > from)
+				System.arraycopy(map, x * height + y0 + from, into, column + from, to - from);
+			Arrays.fill(into, column + to, column + h, map[x * height + height - 1]);
+		}
+	}
+
+	/**
+	 * Sets length tiles of column x from y down to the tiles in b from
+	 * offset on. Tiles of a column are next to each other in the map, so
+	 * this is one copy for generators that write whole runs. Tiles outside
+	 * the level are skipped.
+	 */
+	public void setBlocks(int x, int y, byte[] b, int offset, int length) {
+		if (x < 0 || x >= width)
 			return;
-		if (x >= width)
+		if (y < 0) {
+			offset -= y;
+			length += y;
+			y = 0;
+		}
+		length = Math.min(length, height - y);
+		if (length <= 0)
 			return;
-		if (y >= height)
+		if (journal != null) {
+			for (int i = 0; i < length; i++)
+				setBlock(x, y + i, b[offset + i]);
 			return;
-		map[x][y] = b;
+		}
+		int start = x * height + y;
+		System.arraycopy(b, offset, map, start, length);
+		if (blockAll != null) {
+			for (int i = start; i < start + length; i++)
+				updateSolidity(i);
+		}
 	}
 
-	public boolean isBlocking(int x, int y, float xa, float ya) {
-		byte block = getBlock(x, y);
+	/**
+	 * Makes the current tiles the state that revertToSnapshot() returns to.
+	 * From here on every setBlock is recorded, so a revert only costs as much
+	 * as the number of tiles that changed.
+	 */
+	public void snapshot() {
+		if (journal == null)
+			journal = new int[64];
+		journalSize = 0;
+	}
 
-		boolean blocking = ((TILE_BEHAVIORS[block & 0xff]) & BIT_BLOCK_ALL) > 0;
-		blocking |= (ya > 0)
-				&& ((TILE_BEHAVIORS[block & 0xff]) & BIT_BLOCK_UPPER) > 0;
-		blocking |= (ya < 0)
-				&& ((TILE_BEHAVIORS[block & 0xff]) & BIT_BLOCK_LOWER) > 0;
+	public boolean hasSnapshot() {
+		return journal != null;
+	}
 
-		return blocking;
+	/**
+	 * Undoes every tile change made since the last snapshot()
+	 */
+	public void revertToSnapshot() {
+		for (int i = journalSize - 1; i >= 0; i--) {
+			int entry = journal[i];
+			map[entry >>> 8] = (byte) entry;
+			if (blockAll != null)
+				updateSolidity(entry >>> 8);
+		}
+		journalSize = 0;
 	}
 
-	public SpriteTemplate getSpriteTemplate(int x, int y) {
-		if (x < 0)
-			return null;
+	public boolean isBlocking(int x, int y, float xa, float ya) {
+		// Same edges as getBlock: tile 0 above the level, the edge columns
+		// and bottom row beyond it
 		if (y < 0)
-			return null;
+			return blocks(TILE_BEHAVIORS[0], ya);
+		if (x < 0)
+			x = 0;
 		if (x >= width)
-			return null;
+			x = width - 1;
 		if (y >= height)
-			return null;
-		return spriteTemplates[x][y];
+			y = height - 1;
+
+		if (blockAll == null || solidityVersion != behaviorsVersion)
+			buildSolidity();
+		int i = x * height + y;
+		long bits = blockAll[i >>> 6];
+		if (ya > 0)
+			bits |= blockUpper[i >>> 6];
+		if (ya < 0)
+			bits |= blockLower[i >>> 6];
+		return (bits & 1L << i) != 0;
 	}
 
-	public void setSpriteTemplate(int x, int y, SpriteTemplate spriteTemplate) {
+	/**
+	 * Tests the tiles y0 to y1 of column x at once, like calling isBlocking
+	 * for each of them
+	 */
+	public boolean isBlockingColumn(int x, int y0, int y1, float xa, float ya) {
+		if (y0 > y1)
+			return false;
+		if (y0 < 0) {
+			if (blocks(TILE_BEHAVIORS[0], ya))
+				return true;
+			if (y1 < 0)
+				return false;
+			y0 = 0;
+		}
 		if (x < 0)
-			return;
-		if (y < 0)
-			return;
+			x = 0;
 		if (x >= width)
+			x = width - 1;
+		if (y1 >= height)
+			y1 = height - 1;
+		if (y0 >= height)
+			y0 = height - 1;
+
+		if (blockAll == null || solidityVersion != behaviorsVersion)
+			buildSolidity();
+
+		// The tiles of a column are next to each other in the bitmaps
+		int from = x * height + y0;
+		int to = x * height + y1;
+		int lastWord = to >>> 6;
+		for (int w = from >>> 6; w <= lastWord; w++) {
+			long bits = blockAll[w];
+			if (ya > 0)
+				bits |= blockUpper[w];
+			if (ya < 0)
+				bits |= blockLower[w];
+			if (w == from >>> 6)
+				bits &= -1L << from;
+			if (w == lastWord)
+				bits &= -1L >>> (63 - (to & 63));
+			if (bits != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Tests every tile from (x0, y0) to (x1, y1), the tiles a box covers
+	 */
+	public boolean isBlockingArea(int x0, int y0, int x1, int y1, float xa, float ya) {
+		for (int x = x0; x <= x1; x++) {
+			if (isBlockingColumn(x, y0, y1, xa, ya))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return whether a tile with the behavior blocks a sprite moving
+	 *         vertically at ya
+	 */
+	public static boolean blocks(int behavior, float ya) {
+		boolean blocking = (behavior & BIT_BLOCK_ALL) > 0;
+		blocking |= (ya > 0) && (behavior & BIT_BLOCK_UPPER) > 0;
+		blocking |= (ya < 0) && (behavior & BIT_BLOCK_LOWER) > 0;
+		return blocking;
+	}
+
+	private void buildSolidity() {
+		int words = (map.length + 63) >>> 6;
+		blockAll = new long[words];
+		blockUpper = new long[words];
+		blockLower = new long[words];
+		solidityVersion = behaviorsVersion;
+		for (int i = 0; i < map.length; i++)
+			updateSolidity(i);
+	}
+
+	private void updateSolidity(int i) {
+		int behavior = TILE_BEHAVIORS[map[i] & 0xff];
+		int w = i >>> 6;
+		long bit = 1L << i;
+		blockAll[w] = (behavior & BIT_BLOCK_ALL) != 0 ? blockAll[w] | bit : blockAll[w] & ~bit;
+		blockUpper[w] = (behavior & BIT_BLOCK_UPPER) != 0 ? blockUpper[w] | bit : blockUpper[w] & ~bit;
+		blockLower[w] = (behavior & BIT_BLOCK_LOWER) != 0 ? blockLower[w] | bit : blockLower[w] & ~bit;
+	}
+
+	public SpriteTemplate getSpriteTemplate(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return null;
+		SpriteTemplate[] column = spriteTemplates[x];
+		return column == null ? null : column[y];
+	}
+
+	public void setSpriteTemplate(int x, int y, SpriteTemplate spriteTemplate) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
 			return;
-		if (y >= height)
-			return;
-		spriteTemplates[x][y] = spriteTemplate;
+		SpriteTemplate[] column = spriteTemplates[x];
+		if (column == null) {
+			if (spriteTemplate == null)
+				return;
+			column = spriteTemplates[x] = new SpriteTemplate[height];
+		}
+		column[y] = spriteTemplate;
 	}
 
+	/**
+	 * @return a WIDTH * HEIGHT copy of the sprite templates, indexed [x][y]
+	 */
 	public SpriteTemplate[][] getSpriteTemplate() {
-		return this.spriteTemplates;
+		SpriteTemplate[][] copy = new SpriteTemplate[width][];
+		for (int x = 0; x < width; x++) {
+			SpriteTemplate[] column = spriteTemplates[x];
+			copy[x] = column == null ? new SpriteTemplate[height] : column.clone();
+		}
+		return copy;
 	}
 
 	public void resetSpriteTemplate() {
 		for (int i = 0; i < spriteTemplates.length; i++) {
-			for (int j = 0; j < spriteTemplates[i].length; j++) {
+			SpriteTemplate[] column = spriteTemplates[i];
+			if (column == null)
+				continue;
+			for (int j = 0; j < column.length; j++) {
 
-				SpriteTemplate st = spriteTemplates[i][j];
+				SpriteTemplate st = column[j];
 				if (st != null)
 					st.isDead = false;
 			}
@@ -205,12 +518,19 @@ public class Level implements LevelInterface {
 		}
 	}
 
+	/**
+	 * @return a WIDTH * HEIGHT copy of the tiles, indexed [x][y]. Changes to
+	 *         the copy do not affect the level, use setBlock for that.
+	 */
 	public byte[][] getMap() {
-		return map;
+		byte[][] copy = new byte[width][height];
+		for (int x = 0; x < width; x++)
+			System.arraycopy(map, x * height, copy[x], 0, height);
+		return copy;
 	}
 
 	public SpriteTemplate[][] getSpriteTemplates() {
-		return spriteTemplates;
+		return getSpriteTemplate();
 	}
 
 	public int getxExit() {
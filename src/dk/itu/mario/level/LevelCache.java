@@ -0,0 +1,311 @@
+package dk.itu.mario.level;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import maven.code.Configuration;
+import maven.code.Configurations;
+import dk.itu.mario.MarioInterface.GamePlay;
+import dk.itu.mario.MarioInterface.LevelInterface;
+
+/**
+ * Generated MyLevels by what they were generated from: the generator and
+ * its configurations, seed, size, completion time and death counts. Those
+ * give the same level every time, so a level that was generated before is
+ * read back instead of generated and blockified again.
+ *
+ * The most recently used levels are kept in memory, and every level is
+ * written to a gzipped file in the directory, named after the SHA-1 of its
+ * key. A cache file is
+ *
+ *   int    MAGIC
+ *   UTF    key, so a file can be checked against the key it was found by
+ *   short  width, short height
+ *   the level, see MyLevel.writeGenerated
+ *
+ * Every get returns a new level, levels are changed while they are played.
+ *
+ * The directory keeps at most diskEntries files. Reading a file touches it,
+ * and writing one deletes the files least recently touched beyond the
+ * limit.
+ *
+ * Every change in the death counts is a new key. Levels generated from a
+ * DeathHeatmap's deathWeights, which are rounded to DEATH_WEIGHT shares,
+ * keep their keys while the deaths stay in the same places. The raw death
+ * counts of a session change after almost every death, so those levels are
+ * rarely found again and mostly cycle through the directory.
+ */
+public class LevelCache {
+
+	public static final int MAGIC = 0x4d4c4331; // "MLC1"
+
+	// Change when MyLevel generates a different level from the same input,
+	// so files of the old generator are no longer found
+	public static final String GENERATOR = "MyLevel/2";
+
+	public static final int DEFAULT_CAPACITY = 32;
+	public static final String DEFAULT_DIRECTORY = "levelcache";
+	public static final int DEFAULT_DISK_ENTRIES = 1024;
+
+	private static LevelCache defaultCache;
+
+	private final File directory;
+	private final Map<String, byte[]> memory;
+	private int diskEntries = DEFAULT_DISK_ENTRIES;
+
+	private int hits;
+	private int diskHits;
+	private int misses;
+
+	/**
+	 * @param capacity  the number of levels kept in memory
+	 * @param directory where the level files go, null to keep levels in
+	 *                  memory only
+	 */
+	public LevelCache(final int capacity, File directory) {
+		this.directory = directory;
+		this.memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @param diskEntries the number of level files kept in the directory
+	 */
+	public void setDiskEntries(int diskEntries) {
+		this.diskEntries = Math.max(1, diskEntries);
+	}
+
+	/**
+	 * The cache MyLevelGenerator uses, with DEFAULT_CAPACITY levels in memory
+	 * and the files in DEFAULT_DIRECTORY, next to player.txt
+	 */
+	public static synchronized LevelCache getDefault() {
+		if (defaultCache == null)
+			defaultCache = new LevelCache(DEFAULT_CAPACITY, new File(DEFAULT_DIRECTORY));
+		return defaultCache;
+	}
+
+	/**
+	 * @return the level new MyLevel(width, height, seed, 1, TYPE_OVERGROUND,
+	 *         playerMetrics, deathCount) gives, generated only if it is not
+	 *         in the cache
+	 */
+	public MyLevel get(int width, int height, long seed, GamePlay playerMetrics, Map<Configuration, Integer> deathCount) {
+		String key = key(width, height, seed, playerMetrics, deathCount);
+		String name = address(key);
+
+		byte[] data;
+		synchronized (this) {
+			data = memory.get(name);
+		}
+		if (data != null) {
+			synchronized (this) {
+				hits++;
+			}
+		} else {
+			data = readFile(name);
+			synchronized (this) {
+				if (data != null)
+					diskHits++;
+				else
+					misses++;
+			}
+		}
+
+		if (data != null) {
+			try {
+				DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+				if (dis.readInt() != MAGIC || !dis.readUTF().equals(key) || dis.readShort() != width
+						|| dis.readShort() != height)
+					throw new IOException("Cache file does not match its key");
+				MyLevel level = MyLevel.readGenerated(dis, width, height, seed, playerMetrics, deathCount);
+				synchronized (this) {
+					memory.put(name, data);
+				}
+				return level;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		MyLevel level = new MyLevel(width, height, seed, 1, LevelInterface.TYPE_OVERGROUND, playerMetrics, deathCount);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(width * height + 1024);
+			DataOutputStream dos = new DataOutputStream(bytes);
+			dos.writeInt(MAGIC);
+			dos.writeUTF(key);
+			dos.writeShort(width);
+			dos.writeShort(height);
+			level.writeGenerated(dos);
+			dos.flush();
+			data = bytes.toByteArray();
+			synchronized (this) {
+				memory.put(name, data);
+			}
+			writeFile(name, data);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return level;
+	}
+
+	/**
+	 * Everything the level depends on. The death counts are sorted by
+	 * configuration, so equal maps give equal keys.
+	 */
+	private static String key(int width, int height, long seed, GamePlay playerMetrics,
+			Map<Configuration, Integer> deathCount) {
+		StringBuilder key = new StringBuilder(GENERATOR);
+		key.append(" configs=").append(Configurations.signature());
+		key.append(' ').append(width).append('x').append(height);
+		key.append(" seed=").append(seed);
+		key.append(" completionTime=").append(playerMetrics.getCompletionTime());
+		key.append(" deaths=");
+		for (Map.Entry<Integer, Integer> entry : sortedDeaths(deathCount).entrySet())
+			key.append(entry.getKey()).append(':').append(entry.getValue()).append(',');
+		return key.toString();
+	}
+
+	private static Map<Integer, Integer> sortedDeaths(Map<Configuration, Integer> deathCount) {
+		Map<Integer, Integer> sorted = new TreeMap<Integer, Integer>();
+		for (Map.Entry<Configuration, Integer> entry : deathCount.entrySet())
+			sorted.put(entry.getKey().id, entry.getValue());
+		return sorted;
+	}
+
+	/**
+	 * @return the SHA-1 of key in hex
+	 */
+	private static String address(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private byte[] readFile(String name) {
+		if (directory == null)
+			return null;
+		File file = new File(directory, name + ".lvl.gz");
+		if (!file.isFile())
+			return null;
+		file.setLastModified(System.currentTimeMillis());
+		try {
+			DataInputStream dis = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[1 << 13];
+				int n;
+				while ((n = dis.read(buffer)) > 0)
+					bytes.write(buffer, 0, n);
+				return bytes.toByteArray();
+			} finally {
+				dis.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Writes to a temporary file of its own first and moves it over the
+	 * level file in one step, so another process sharing the directory never
+	 * reads half a level. Writers of the same key write the same level, so
+	 * whichever move comes last wins.
+	 */
+	private void writeFile(String name, byte[] data) {
+		if (directory == null)
+			return;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			System.err.println("Unable to create level cache directory " + directory);
+			return;
+		}
+		File file = new File(directory, name + ".lvl.gz");
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(name, ".tmp", directory);
+			GZIPOutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.write(data);
+			} finally {
+				out.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			e.printStackTrace();
+			if (tmp != null)
+				tmp.delete();
+		}
+		evict();
+	}
+
+	/**
+	 * Deletes the least recently touched level files beyond diskEntries.
+	 * Another process may delete the same files, or read one that is about
+	 * to go, which then only misses.
+	 */
+	private void evict() {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".lvl.gz");
+			}
+		});
+		if (files == null || files.length <= diskEntries)
+			return;
+
+		final long[] modified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			modified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(modified[a], modified[b]);
+			}
+		});
+		for (int i = 0; i < files.length - diskEntries; i++)
+			files[order[i]].delete();
+	}
+
+	/**
+	 * @return levels found in memory, levels read from the directory and
+	 *         levels generated
+	 */
+	public synchronized int[] getStats() {
+		return new int[] { hits, diskHits, misses };
+	}
+}
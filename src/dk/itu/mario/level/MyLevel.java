@@ -1,11 +1,14 @@
 package dk.itu.mario.level;
 
 import java.awt.Point;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 
 import maven.code.Configuration;
@@ -25,32 +28,47 @@ public class MyLevel extends Level {
 	public int ENEMIES = 0;
 	
 	// Store information about the level
-	private Random random;
+	private long seed;
+	private SplittableRandom random;
 	private int difficulty;
 	private int type;
 	
 	private GamePlay playerMetrics;
 	private int prevLevelCompTime;
 
-	// Static to persist over multiple levels
-	private static Map<Configuration, Integer> deathCount = new HashMap<>();
+	// Shared with the levels that follow so deaths persist over multiple levels
+	private Map<Configuration, Integer> deathCount;
+	// The death counts this level was generated from, deathCount changes
+	// while the level is played
+	private Map<Configuration, Integer> generationDeathCount;
 	
 	private List<Configuration> configs;
 	private TreeMap<Integer, Configuration> configTreeMap;
 
+	// Deaths are also counted here when set, see setHeatmap
+	private DeathHeatmap heatmap;
+
 	public MyLevel(int width, int height) {
 		this(width, height, 4731L, 0, LevelInterface.TYPE_OVERGROUND, new GamePlay());
 	}
 
 	public MyLevel(int width, int height, long seed, int difficulty, int type, GamePlay playerMetrics) {
+		this(width, height, seed, difficulty, type, playerMetrics, new HashMap<Configuration, Integer>());
+	}
+
+	public MyLevel(int width, int height, long seed, int difficulty, int type, GamePlay playerMetrics,
+			Map<Configuration, Integer> deathCount) {
 		super(width, height);
 		
+		this.deathCount = deathCount;
 		this.playerMetrics = playerMetrics;
 		
 		// Hills don't play nicely with other types.
 		this.type = LevelInterface.TYPE_OVERGROUND;
 		
-		this.random = new Random(seed);
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+		this.generationDeathCount = new HashMap<Configuration, Integer>(deathCount);
 		this.configs = new ArrayList<>(Configurations.configs());
 		this.configTreeMap = new TreeMap<Integer, Configuration>();
 		this.difficulty = Math.max(0, playerMetrics.getCompletionTime() - 16); 
@@ -58,6 +76,44 @@ public class MyLevel extends Level {
 		createLevel();
 	}
 
+	private MyLevel(int width, int height, Map<Configuration, Integer> deathCount) {
+		super(width, height);
+		this.deathCount = deathCount;
+	}
+
+	/**
+	 * The generator this level is built from. Configurations draw from it so
+	 * the same seed always gives the same level.
+	 */
+	public SplittableRandom getRandom() {
+		return random;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public GamePlay getPlayerMetrics() {
+		return playerMetrics;
+	}
+
+	/**
+	 * @return the death counts as they were when this level was generated.
+	 *         Together with the seed, width and player metrics they give the
+	 *         same level again.
+	 */
+	public Map<Configuration, Integer> getGenerationDeathCount() {
+		return generationDeathCount;
+	}
+
+	/**
+	 * Counts the deaths in this level in heatmap too, by configuration and
+	 * column within it
+	 */
+	public void setHeatmap(DeathHeatmap heatmap) {
+		this.heatmap = heatmap;
+	}
+
 	/**
 	 * Will take in the coordinate mario died at and find the configuration that the
 	 * x coordinate is within range of
@@ -71,6 +127,9 @@ public class MyLevel extends Level {
 	    	return null;
 	    } else {
 	    	Configuration c = configTreeMap.get(key);
+	    	if (heatmap != null) {
+	    		heatmap.record(c.id, x - key);
+	    	}
 	    	if (!deathCount.containsKey(c)) {
 	    		deathCount.put(c, 0);
 	    	}
@@ -79,14 +138,11 @@ public class MyLevel extends Level {
 	    }
 	}
 	
-	public void createLevel() {
-		System.out.println("Difficulty: " + difficulty);
-		
-		Point at = new Point(0, 2);
-
-		// width we want to leave safe at the end and beginning
-		int cushion = 15;
-
+	/**
+	 * Caps the death counts at a sixth of the total weight, so no single
+	 * configuration takes over. Changes deathCount.
+	 */
+	private void capDeaths() {
 		int sum = configs.size();
 		sum += configs.size() * difficulty;
 		for (int deaths : deathCount.values()) {
@@ -96,30 +152,33 @@ public class MyLevel extends Level {
 		int limit = sum / 6;
 		for (Configuration c : deathCount.keySet()) {
 			if (deathCount.get(c) > limit) {
-				sum -= deathCount.get(c) + limit;
 				deathCount.put(c, limit);
 			}
 		}
+	}
+
+	public void createLevel() {
+		Point at = new Point(0, 2);
+
+		// width we want to leave safe at the end and beginning
+		int cushion = 15;
+
+		capDeaths();
 		
+		// Configurations are picked by weight 1 + difficulty + deaths, the
+		// first one whose running total of weights reaches the draw
+		int[] weights = new int[configs.size()];
+		for (int i = 0; i < weights.length; i++) {
+			Integer deaths = deathCount.get(configs.get(i));
+			weights[i] = 1 + difficulty + (deaths == null ? 0 : deaths);
+		}
+		WeightedSampler sampler = new WeightedSampler(weights);
+
 		at = straight(at, cushion);
 		while(at.x < width - cushion) {
-			int config = random.nextInt(sum + 1);
-			Configuration choice = null;
-			for (Configuration c : configs) {
-				
-				config -= 1;
-				config -= difficulty;
-				if (deathCount.containsKey(c)) {
-					config -= deathCount.get(c);
-				}
-				
-				if (config <= 0) {
-					choice = c;
-					break;
-				}
-			}
-			
-			if (choice == null) continue;
+			// A draw from 1 to the total always lands on a configuration
+			int pick = sampler.find(random.nextInt(sampler.total()) + 1);
+			Configuration choice = configs.get(pick);
 			
 			configTreeMap.put(at.x, choice);
 			at = choice.apply(at, this);
@@ -414,9 +473,71 @@ public class MyLevel extends Level {
 		}
 	}
 
+	/**
+	 * Writes everything generating this level made: the tiles, sprite
+	 * templates, exit, configurations and block counts. See LevelCache.
+	 */
+	void writeGenerated(DataOutputStream dos) throws IOException {
+		writeTiles(dos);
+		dos.writeShort(xExit);
+		dos.writeShort(yExit);
+		dos.writeInt(BLOCKS_EMPTY);
+		dos.writeInt(BLOCKS_COINS);
+		dos.writeInt(BLOCKS_POWER);
+		dos.writeInt(COINS);
+		dos.writeInt(ENEMIES);
+		dos.writeShort(configTreeMap.size());
+		for (Map.Entry<Integer, Configuration> entry : configTreeMap.entrySet()) {
+			dos.writeShort(entry.getKey());
+			dos.writeShort(entry.getValue().id);
+		}
+	}
+
+	/**
+	 * The level the constructor with the same arguments generates, read
+	 * from what writeGenerated wrote instead of generated again. deathCount
+	 * is capped the same way generating it would.
+	 */
+	static MyLevel readGenerated(DataInputStream dis, int width, int height, long seed, GamePlay playerMetrics,
+			Map<Configuration, Integer> deathCount) throws IOException {
+		MyLevel level = new MyLevel(width, height, deathCount);
+		level.playerMetrics = playerMetrics;
+		level.type = LevelInterface.TYPE_OVERGROUND;
+		level.seed = seed;
+		level.random = new SplittableRandom(seed);
+		level.generationDeathCount = new HashMap<Configuration, Integer>(deathCount);
+		level.configs = new ArrayList<>(Configurations.configs());
+		level.configTreeMap = new TreeMap<Integer, Configuration>();
+		level.difficulty = Math.max(0, playerMetrics.getCompletionTime() - 16);
+
+		level.readTiles(dis);
+		level.xExit = dis.readShort();
+		level.yExit = dis.readShort();
+		level.BLOCKS_EMPTY = dis.readInt();
+		level.BLOCKS_COINS = dis.readInt();
+		level.BLOCKS_POWER = dis.readInt();
+		level.COINS = dis.readInt();
+		level.ENEMIES = dis.readInt();
+
+		Map<Integer, Configuration> byId = new HashMap<Integer, Configuration>();
+		for (Configuration c : level.configs)
+			byId.put(c.id, c);
+		int configs = dis.readUnsignedShort();
+		for (int i = 0; i < configs; i++) {
+			int x = dis.readShort();
+			Configuration c = byId.get(dis.readUnsignedShort());
+			if (c == null)
+				throw new IOException("Unknown configuration");
+			level.configTreeMap.put(x, c);
+		}
+
+		level.capDeaths();
+		return level;
+	}
+
 	public MyLevel clone() throws CloneNotSupportedException {
-		MyLevel clone = new MyLevel(width, height, 
-				(long) Math.random() * Long.MAX_VALUE, difficulty, type, playerMetrics);
+		// Copy only, generating a throwaway level first would double the cost
+		MyLevel clone = new MyLevel(width, height, deathCount);
 
 		clone.BLOCKS_COINS = BLOCKS_COINS;
 		clone.BLOCKS_EMPTY = BLOCKS_EMPTY;
@@ -430,19 +551,12 @@ public class MyLevel extends Level {
 		clone.playerMetrics = playerMetrics;
 		clone.prevLevelCompTime = prevLevelCompTime;
 		clone.random = random;
+		clone.seed = seed;
+		clone.generationDeathCount = generationDeathCount;
 		clone.type = type;
+		clone.heatmap = heatmap;
 		
-		clone.xExit = xExit;
-		clone.yExit = yExit;
-		byte[][] map = getMap();
-		SpriteTemplate[][] st = getSpriteTemplate();
-
-		for (int i = 0; i < map.length; i++) {
-			for (int j = 0; j < map[i].length; j++) {
-				clone.setBlock(i, j, map[i][j]);
-				clone.setSpriteTemplate(i, j, st[i][j]);
-			}
-		}
+		copyTilesTo(clone);
 		return clone;
 	}
 
@@ -1,5 +1,10 @@
 package dk.itu.mario.level;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Random;
 
 import dk.itu.mario.MarioInterface.Constraints;
@@ -17,7 +22,6 @@ public class RandomLevel extends Level{
 	 public   int COINS = 0; //These are the coins in boxes that Mario collect
 
  
-	private static Random levelSeedRandom = new Random();
 	    public static long lastSeed;
 
 	    Random random;
@@ -48,7 +52,92 @@ public class RandomLevel extends Level{
 	        creat(seed, difficulty, type);
 	    }
 
-	    public void creat(long seed, int difficulty, int type)
+	    // Columns are generated CHUNK_WIDTH at a time when streaming
+	    public static final int CHUNK_WIDTH = 32;
+
+	    // Streaming state: the columns built by zones so far, and for
+	    // fixWalls the wall map of the first column it has not finished
+	    private int rawWidth;
+	    private boolean[] seam;
+	    private Random ceilingRandom;
+	    private int ceiling;
+	    private int ceilingRun;
+
+	    /**
+	     * Makes a level that only generates its first chunk up front. The rest
+	     * is generated by generateUpTo as the camera gets near it, so very
+	     * long levels start at once. The same seed gives a different level
+	     * than the constructor, castles and caves take their ceiling from a
+	     * separate stream.
+	     */
+	    public static RandomLevel streaming(int width, int height, long seed, int difficulty, int type)
+	    {
+	        RandomLevel level = new RandomLevel(width, height);
+	        level.setOdds(difficulty, type);
+	        lastSeed = seed;
+	        level.random = new Random(seed);
+	        level.ceilingRandom = new Random(seed ^ 0x5deece66dL);
+	        // Not reachable until the end piece is generated
+	        level.xExit = width;
+	        level.yExit = height - 1;
+	        level.generatedWidth = 0;
+	        level.generateUpTo(0);
+	        return level;
+	    }
+
+	    protected void generate(int xTarget)
+	    {
+	        int target = Math.min(width, (xTarget / CHUNK_WIDTH + 1) * CHUNK_WIDTH);
+	        int start = rawWidth;
+
+	        while (rawWidth < target)
+	        {
+	            if (rawWidth == 0)
+	            {
+	                rawWidth += buildStraight(0, width, true);
+	            }
+	            else if (rawWidth < width - 64)
+	            {
+	                rawWidth += buildZone(rawWidth, width - rawWidth);
+	            }
+	            else
+	            {
+	                buildEnd(rawWidth);
+	                rawWidth = width;
+	            }
+	        }
+
+	        if (type == LevelInterface.TYPE_CASTLE || type == LevelInterface.TYPE_UNDERGROUND)
+	        {
+	            for (int x = start; x < rawWidth; x++)
+	            {
+	                if (ceilingRun-- <= 0 && x > 4)
+	                {
+	                    ceiling = ceilingRandom.nextInt(4);
+	                    ceilingRun = ceilingRandom.nextInt(4) + 4;
+	                }
+	                for (int y = 0; y < height; y++)
+	                {
+	                    if ((x > 4 && y <= ceiling) || x < 1)
+	                    {
+	                        setBlock(x, y, GROUND);
+	                    }
+	                }
+	            }
+	        }
+
+	        // The walls of a column depend on the next one, so the last column
+	        // is only finished with the next chunk
+	        int fixed = rawWidth == width ? width : rawWidth - 1;
+	        int from = generatedWidth;
+	        if (fixed > from)
+	        {
+	            fixWalls(from, fixed);
+	        }
+	        generatedWidth = fixed == width ? Integer.MAX_VALUE : fixed;
+	    }
+
+	    private void setOdds(int difficulty, int type)
 	    {
 	        this.type = type;
 	        this.difficulty = difficulty;
@@ -73,6 +162,11 @@ public class RandomLevel extends Level{
 	            totalOdds += odds[i];
 	            odds[i] = totalOdds - odds[i];
 	        }
+	    }
+
+	    public void creat(long seed, int difficulty, int type)
+	    {
+	        setOdds(difficulty, type);
 
 	        lastSeed = seed;
 	        random = new Random(seed);
@@ -88,22 +182,7 @@ public class RandomLevel extends Level{
 	        }
 
 	        //set the end piece
-	        int floor = height - 1 - random.nextInt(4);
-
-	        xExit = length + 8;
-	        yExit = floor;
-
-	        // fills the end piece
-	        for (int x = length; x < width; x++)
-	        {
-	            for (int y = 0; y < height; y++)
-	            {
-	                if (y >= floor)
-	                {
-	                    setBlock(x, y, GROUND);
-	                }
-	            }
-	        }
+	        buildEnd(length);
 
 	        if (type == LevelInterface.TYPE_CASTLE || type == LevelInterface.TYPE_UNDERGROUND)
 	        {
@@ -130,6 +209,26 @@ public class RandomLevel extends Level{
 
 	    }
 
+	    private void buildEnd(int length)
+	    {
+	        int floor = height - 1 - random.nextInt(4);
+
+	        xExit = length + 8;
+	        yExit = floor;
+
+	        // fills the end piece
+	        for (int x = length; x < width; x++)
+	        {
+	            for (int y = 0; y < height; y++)
+	            {
+	                if (y >= floor)
+	                {
+	                    setBlock(x, y, GROUND);
+	                }
+	            }
+	        }
+	    }
+
 	    private int buildZone(int x, int maxLength)
 	    {
 	        int t = random.nextInt(totalOdds);
@@ -540,10 +639,49 @@ public class RandomLevel extends Level{
 	                blockMap[x][y] = blocks == 4;
 	            }
 	        }
-	        blockify(this, blockMap, width + 1, height + 1);
+	        blockify(this, blockMap, 0, width + 1, width + 1, height + 1);
+	    }
+
+	    /**
+	     * fixWalls for the columns from x0 to x1 of a streaming level. Columns
+	     * from x0 on still hold the raw GROUND tiles, up to and including x1.
+	     */
+	    private void fixWalls(int x0, int x1)
+	    {
+	        boolean[][] blockMap = new boolean[x1 - x0 + 1][];
+
+	        for (int x = x0; x <= x1; x++)
+	        {
+	            if (x == x0 && seam != null)
+	            {
+	                blockMap[0] = seam;
+	                continue;
+	            }
+	            boolean[] column = blockMap[x - x0] = new boolean[height + 1];
+	            for (int y = 0; y < height + 1; y++)
+	            {
+	                int blocks = 0;
+	                for (int xx = x - 1; xx < x + 1; xx++)
+	                {
+	                    for (int yy = y - 1; yy < y + 1; yy++)
+	                    {
+	                        if (getBlockCapped(xx, yy) == GROUND){
+	                        	blocks++;
+	                        }
+	                    }
+	                }
+	                column[y] = blocks == 4;
+	            }
+	        }
+	        seam = blockMap[x1 - x0];
+	        blockify(this, blockMap, x0, x1 - x0, x1 - x0 + 1, height + 1);
 	    }
 
-	    private void blockify(Level level, boolean[][] blocks, int width, int height){
+	    /**
+	     * Sets the wall tiles of the level columns xOffset to xOffset + columns
+	     * from blocks, whose first column is xOffset
+	     */
+	    private void blockify(Level level, boolean[][] blocks, int xOffset, int columns, int width, int height){
 	        int to = 0;
 	        if (type == LevelInterface.TYPE_CASTLE)
 	        {
@@ -556,7 +694,7 @@ public class RandomLevel extends Level{
 
 	        boolean[][] b = new boolean[2][2];
 
-	        for (int x = 0; x < width; x++)
+	        for (int x = 0; x < columns; x++)
 	        {
 	            for (int y = 0; y < height; y++)
 	            {
@@ -580,7 +718,7 @@ public class RandomLevel extends Level{
 	                    {
 	                        if (b[0][0])
 	                        {
-	                            level.setBlock(x, y, (byte) (1 + 9 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (1 + 9 * 16 + to));
 	                        }
 	                        else
 	                        {
@@ -592,12 +730,12 @@ public class RandomLevel extends Level{
 	                        if (b[0][0])
 	                        {
 	                        	//down grass top?
-	                            level.setBlock(x, y, (byte) (1 + 10 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (1 + 10 * 16 + to));
 	                        }
 	                        else
 	                        {
 	                        	//up grass top
-	                            level.setBlock(x, y, (byte) (1 + 8 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (1 + 8 * 16 + to));
 	                        }
 	                    }
 	                }
@@ -606,17 +744,17 @@ public class RandomLevel extends Level{
 	                    if (b[0][0])
 	                    {
 	                    	//right grass top
-	                        level.setBlock(x, y, (byte) (2 + 9 * 16 + to));
+	                        level.setBlock(xOffset + x, y, (byte) (2 + 9 * 16 + to));
 	                    }
 	                    else
 	                    {
 	                    	//left grass top
-	                        level.setBlock(x, y, (byte) (0 + 9 * 16 + to));
+	                        level.setBlock(xOffset + x, y, (byte) (0 + 9 * 16 + to));
 	                    }
 	                }
 	                else if (b[0][0] == b[1][1] && b[0][1] == b[1][0])
 	                {
-	                    level.setBlock(x, y, (byte) (1 + 9 * 16 + to));
+	                    level.setBlock(xOffset + x, y, (byte) (1 + 9 * 16 + to));
 	                }
 	                else if (b[0][0] == b[1][0])
 	                {
@@ -624,11 +762,11 @@ public class RandomLevel extends Level{
 	                    {
 	                        if (b[0][1])
 	                        {
-	                            level.setBlock(x, y, (byte) (3 + 10 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (3 + 10 * 16 + to));
 	                        }
 	                        else
 	                        {
-	                            level.setBlock(x, y, (byte) (3 + 11 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (3 + 11 * 16 + to));
 	                        }
 	                    }
 	                    else
@@ -636,12 +774,12 @@ public class RandomLevel extends Level{
 	                        if (b[0][1])
 	                        {
 	                        	//right up grass top
-	                            level.setBlock(x, y, (byte) (2 + 8 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (2 + 8 * 16 + to));
 	                        }
 	                        else
 	                        {
 	                        	//left up grass top
-	                            level.setBlock(x, y, (byte) (0 + 8 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (0 + 8 * 16 + to));
 	                        }
 	                    }
 	                }
@@ -652,53 +790,82 @@ public class RandomLevel extends Level{
 	                        if (b[0][0])
 	                        {
 	                        	//left pocket grass
-	                            level.setBlock(x, y, (byte) (3 + 9 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (3 + 9 * 16 + to));
 	                        }
 	                        else
 	                        {
 	                        	//right pocket grass
-	                            level.setBlock(x, y, (byte) (3 + 8 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (3 + 8 * 16 + to));
 	                        }
 	                    }
 	                    else
 	                    {
 	                        if (b[0][0])
 	                        {
-	                            level.setBlock(x, y, (byte) (2 + 10 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (2 + 10 * 16 + to));
 	                        }
 	                        else
 	                        {
-	                            level.setBlock(x, y, (byte) (0 + 10 * 16 + to));
+	                            level.setBlock(xOffset + x, y, (byte) (0 + 10 * 16 + to));
 	                        }
 	                    }
 	                }
 	                else
 	                {
-	                    level.setBlock(x, y, (byte) (0 + 1 * 16 + to));
+	                    level.setBlock(xOffset + x, y, (byte) (0 + 1 * 16 + to));
 	                }
 	            }
 	        }
 	    }
 	    
+	    /**
+	     * @return a Random that draws the same numbers as random from here on
+	     */
+	    private static Random copyOf(Random random)
+	    {
+	        try
+	        {
+	            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	            ObjectOutputStream out = new ObjectOutputStream(bytes);
+	            out.writeObject(random);
+	            out.close();
+	            return (Random) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	        }
+	        catch (IOException e)
+	        {
+	            throw new IllegalStateException(e);
+	        }
+	        catch (ClassNotFoundException e)
+	        {
+	            throw new IllegalStateException(e);
+	        }
+	    }
+
 	    public RandomLevel clone() throws CloneNotSupportedException {
 
 	    	RandomLevel clone=new RandomLevel(width, height);
 
-	    	clone.xExit = xExit;
-	    	clone.yExit = yExit;
-	    	byte[][] map = getMap();
-	    	SpriteTemplate[][] st = getSpriteTemplate();
-	    	
-	    	for (int i = 0; i < map.length; i++)
-	    		for (int j = 0; j < map[i].length; j++) {
-	    			clone.setBlock(i, j, map[i][j]);
-	    			clone.setSpriteTemplate(i, j, st[i][j]);
-	    	}
+	    	copyTilesTo(clone);
 	    	clone.BLOCKS_COINS = BLOCKS_COINS;
 	    	clone.BLOCKS_EMPTY = BLOCKS_EMPTY;
 	    	clone.BLOCKS_POWER = BLOCKS_POWER;
 	    	clone.ENEMIES = ENEMIES;
 	    	clone.COINS = COINS;
+
+	    	if (generatedWidth != Integer.MAX_VALUE)
+	    	{
+	    		// The copy goes on generating from where this one is, with its
+	    		// own copy of the generator state
+	    		clone.setOdds(difficulty, type);
+	    		clone.gaps = gaps;
+	    		clone.random = copyOf(random);
+	    		clone.ceilingRandom = copyOf(ceilingRandom);
+	    		clone.ceiling = ceiling;
+	    		clone.ceilingRun = ceilingRun;
+	    		clone.rawWidth = rawWidth;
+	    		clone.seam = seam == null ? null : seam.clone();
+	    		clone.generatedWidth = generatedWidth;
+	    	}
 	    	
 	        return clone;
 
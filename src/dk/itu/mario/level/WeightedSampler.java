@@ -0,0 +1,58 @@
+package dk.itu.mario.level;
+
+/**
+ * Picks items by weight in O(log n) with a Fenwick tree over the weights.
+ * find(target) gives the first item whose running total of weights reaches
+ * target, which is what walking the items and subtracting each weight from
+ * target gives, and add changes a weight without rebuilding the tree.
+ */
+class WeightedSampler {
+
+	// tree[i] is the sum of the weights of items i - (i & -i) to i - 1
+	private final int[] tree;
+	private int total;
+
+	WeightedSampler(int[] weights) {
+		tree = new int[weights.length + 1];
+		for (int i = 1; i <= weights.length; i++) {
+			tree[i] += weights[i - 1];
+			total += weights[i - 1];
+			int parent = i + (i & -i);
+			if (parent < tree.length)
+				tree[parent] += tree[i];
+		}
+	}
+
+	public int size() {
+		return tree.length - 1;
+	}
+
+	public int total() {
+		return total;
+	}
+
+	public void add(int item, int delta) {
+		total += delta;
+		for (int i = item + 1; i < tree.length; i += i & -i)
+			tree[i] += delta;
+	}
+
+	/**
+	 * @return the first item whose weight and the weights before it add up
+	 *         to at least target, or -1 if target is more than the total.
+	 *         Item 0 for any target up to its weight, including 0.
+	 */
+	public int find(int target) {
+		if (target > total || size() == 0)
+			return -1;
+		int at = 0;
+		for (int step = Integer.highestOneBit(Math.max(1, size())); step > 0; step >>= 1) {
+			int next = at + step;
+			if (next < tree.length && tree[next] < target) {
+				at = next;
+				target -= tree[next];
+			}
+		}
+		return at;
+	}
+}
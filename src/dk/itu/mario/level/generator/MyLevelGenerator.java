@@ -1,21 +1,75 @@
 package dk.itu.mario.level.generator;
 
-import java.util.Random;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import maven.code.Configuration;
 
 import dk.itu.mario.MarioInterface.Constraints;
 import dk.itu.mario.MarioInterface.GamePlay;
 import dk.itu.mario.MarioInterface.LevelGenerator;
 import dk.itu.mario.MarioInterface.LevelInterface;
 import dk.itu.mario.level.CustomizedLevel;
+import dk.itu.mario.level.DeathHeatmap;
+import dk.itu.mario.level.LevelCache;
 import dk.itu.mario.level.MyLevel;
 
 public class MyLevelGenerator extends CustomizedLevelGenerator implements LevelGenerator{
 	
+	private Map<Configuration, Integer> deathCount;
+	private SplittableRandom random;
+	private LevelCache cache = LevelCache.getDefault();
+	private DeathHeatmap heatmap;
+
+	public MyLevelGenerator() {
+		this(new HashMap<Configuration, Integer>());
+	}
+
+	public MyLevelGenerator(Map<Configuration, Integer> deathCount) {
+		this(deathCount, new SplittableRandom());
+	}
+
+	/**
+	 * @param random picks the seed and type of each generated level, so a
+	 *               seeded stream gives the same sequence of levels
+	 */
+	public MyLevelGenerator(Map<Configuration, Integer> deathCount, SplittableRandom random) {
+		this.deathCount = deathCount;
+		this.random = random;
+	}
+
 	public LevelInterface generateLevel(GamePlay playerMetrics) {
-		LevelInterface level = new MyLevel(160,15,new Random().nextLong(),1,new Random().nextInt(3),playerMetrics);
+		long seed = random.nextLong();
+		random.nextInt(3); // the type, MyLevel is always overground
+		Map<Configuration, Integer> deaths = heatmap == null ? deathCount : heatmap.deathWeights();
+		MyLevel level;
+		if (cache == null)
+			level = new MyLevel(160,15,seed,1,LevelInterface.TYPE_OVERGROUND,playerMetrics,deaths);
+		else
+			level = cache.get(160, 15, seed, playerMetrics, deaths);
+		level.setHeatmap(heatmap);
 		return level;
 	}
 
+	/**
+	 * @param heatmap where the deaths in generated levels are counted, and
+	 *                whose death weights levels are generated from instead
+	 *                of the death counts of this session. Null to use the
+	 *                session's.
+	 */
+	public void setHeatmap(DeathHeatmap heatmap) {
+		this.heatmap = heatmap;
+	}
+
+	/**
+	 * @param cache where generated levels are looked up first, null to
+	 *              always generate them
+	 */
+	public void setCache(LevelCache cache) {
+		this.cache = cache;
+	}
+
 	@Override
 	public LevelInterface generateLevel(String detailedInfo) {
 		// TODO Auto-generated method stub
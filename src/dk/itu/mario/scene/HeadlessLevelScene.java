@@ -0,0 +1,132 @@
+package dk.itu.mario.scene;
+
+import java.awt.Graphics;
+import java.util.Arrays;
+
+import dk.itu.mario.MarioInterface.LevelInterface;
+import dk.itu.mario.engine.WorldContext;
+import dk.itu.mario.engine.sonar.FakeSoundEngine;
+import dk.itu.mario.level.Level;
+
+/**
+ * A LevelScene that runs the game simulation without a MarioComponent.
+ * There is no renderer, no Art, no sound and no wall-clock pacing: every
+ * call to tick() advances the world by one game tick, so the caller can
+ * drive it as fast as the CPU allows.
+ *
+ * A win ends the run as soon as mario reaches the exit, without waiting
+ * for the blackout.
+ */
+public class HeadlessLevelScene extends LevelScene
+{
+    private boolean won = false;
+    private boolean lost = false;
+    private int ticksRun = 0;
+    private int[] deathPositions = new int[4];
+    private int deaths = 0;
+
+    public HeadlessLevelScene(Level level)
+    {
+        this(level, new WorldContext());
+    }
+
+    public HeadlessLevelScene(Level level, WorldContext context)
+    {
+        super(null, null, 0, 0, LevelInterface.TYPE_OVERGROUND, context);
+        this.currentLevel = level;
+        setSound(new FakeSoundEngine());
+    }
+
+    public void init()
+    {
+        Level.initBehaviors();
+        reset();
+    }
+
+    public void tick()
+    {
+        if (isFinished()) return;
+
+        super.tick();
+        ticksRun++;
+
+        if (mario.winTime > 0)
+        {
+            won = true;
+        }
+    }
+
+    /**
+     * Ticks until mario wins, runs out of lives or maxTicks have passed.
+     *
+     * @return the number of ticks that were run
+     */
+    public int run(int maxTicks)
+    {
+        int start = ticksRun;
+        while (!isFinished() && ticksRun - start < maxTicks)
+        {
+            tick();
+        }
+        return ticksRun - start;
+    }
+
+    /**
+     * Starts a new attempt as if ticksRun ticks had been played and mario had
+     * died at deathPositions. The player state for the attempt has to be in
+     * the context already.
+     */
+    public void restart(int ticksRun, int[] deathPositions)
+    {
+        this.ticksRun = ticksRun;
+        this.deathPositions = Arrays.copyOf(deathPositions, Math.max(4, deathPositions.length));
+        this.deaths = deathPositions.length;
+        won = false;
+        lost = false;
+        reset();
+    }
+
+    public void deathActions()
+    {
+        if (deaths == deathPositions.length)
+            deathPositions = Arrays.copyOf(deathPositions, deaths * 2);
+        deathPositions[deaths++] = mario.xDeathPos / 16;
+
+        if (context.lives <= 0)
+            lost = true;
+        else
+            reset();
+    }
+
+    public void render(Graphics g, float alpha)
+    {
+    }
+
+    public boolean isFinished()
+    {
+        return won || lost;
+    }
+
+    public boolean hasWon()
+    {
+        return won;
+    }
+
+    public boolean hasLost()
+    {
+        return lost;
+    }
+
+    /**
+     * @return the tile x position of every death so far, oldest first
+     */
+    public int[] getDeathPositions()
+    {
+        return Arrays.copyOf(deathPositions, deaths);
+    }
+
+    public int getTicksRun()
+    {
+        return ticksRun;
+    }
+}
@@ -0,0 +1,40 @@
+package dk.itu.mario.scene;
+
+import dk.itu.mario.engine.BgRenderer;
+import dk.itu.mario.engine.LevelRenderer;
+import dk.itu.mario.engine.sprites.DrawList;
+
+/**
+ * Everything LevelScene.render draws, copied at the end of a tick so the
+ * render thread never reads the scene while the next tick changes it.
+ */
+class LevelFrame
+{
+    // -1 until the frame is first published
+    int clock = -1;
+    int tick;
+    boolean paused;
+
+    LevelRenderer layer;
+    BgRenderer[] bgLayer = new BgRenderer[2];
+    int levelWidth, levelHeight;
+
+    float marioXOld, marioYOld, marioX, marioY;
+    int xDeathPos, yDeathPos;
+    int startTime;
+    int winTime;
+    int deathTime;
+
+    int lives;
+    int coins;
+    String levelString;
+    int timeLeft;
+
+    boolean arrowFlipped;
+    int[] xPositionsArrow;
+    int[] yPositionsArrow;
+
+    // Sprites behind and in front of the level tiles
+    final DrawList back = new DrawList();
+    final DrawList front = new DrawList();
+}
@@ -6,15 +6,21 @@ import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.event.MouseEvent;
 import java.io.*;
-import java.text.DecimalFormat;
 import java.util.*;
 
 
+import dk.itu.mario.engine.Agent;
 import dk.itu.mario.engine.Art;
 import dk.itu.mario.engine.BgRenderer;
 import dk.itu.mario.engine.DataRecorder;
+import dk.itu.mario.engine.EventLog;
 import dk.itu.mario.engine.LevelRenderer;
 import dk.itu.mario.engine.MarioComponent;
+import dk.itu.mario.engine.Observation;
+import dk.itu.mario.engine.Recorder;
+import dk.itu.mario.engine.Replayer;
+import dk.itu.mario.engine.TripleBuffer;
+import dk.itu.mario.engine.WorldContext;
 import dk.itu.mario.level.Level;
 import dk.itu.mario.level.RandomLevel;
 
@@ -36,14 +42,15 @@ import dk.itu.mario.engine.sprites.SpriteTemplate;
 
 public class LevelScene extends Scene implements SpriteContext
 {
-    protected List<Sprite> sprites = new ArrayList<Sprite>();
-    protected List<Sprite> spritesToAdd = new ArrayList<Sprite>();
-    protected List<Sprite> spritesToRemove = new ArrayList<Sprite>();
+    protected final SpriteStore sprites;
 
     public Level level;
 //    public Level levelTemp;
     public Mario mario;
     public float xCam, yCam, xCamO, yCamO;
+
+    // Columns past the right edge of the screen a streaming level must have
+    private static final int GENERATE_AHEAD = 20;
     public static Image tmpImage;
     protected int tick;
 
@@ -55,19 +62,38 @@ public class LevelScene extends Scene implements SpriteContext
     public boolean paused = false;
     public int startTime = 0;
     public int timeLeft;
+    // Ticks an attempt may take before mario runs out of time
+    private int timeLimit = 200*15;
+
+    // Key input recording and playback, see Replay
+    public Recorder inputRecorder;
+    public Replayer replayer;
 
-    //    private Recorder recorder = new Recorder();
-    //    private Replayer replayer = null;
+    // Plays instead of the keys when set and there is no replayer
+    private Agent agent;
+    private Observation observation;
 
     protected long levelSeed;
     protected MarioComponent marioComponent;
     protected int levelType;
     protected int levelDifficulty;
 
-    public static DataRecorder recorder;
+    public DataRecorder recorder;
+    public final WorldContext context;
+    public final ParticlePool particles;
+
+    // Enemy movement. Every attempt at the level restarts the stream from
+    // aiSeed, so an attempt only depends on the seed, the player state it
+    // starts with and the keys pressed.
+    public SplittableRandom aiRandom;
+    protected long aiSeed;
 
     public boolean gameStarted;
 
+    // What render draws, handed over from the simulation thread
+    private final TripleBuffer<LevelFrame> frames = new TripleBuffer<LevelFrame>(new LevelFrame(), new LevelFrame(), new LevelFrame());
+    private LevelFrame frame;
+
     public static boolean bothPlayed = false;
 
     private int []xPositionsArrow;
@@ -77,6 +103,17 @@ public class LevelScene extends Scene implements SpriteContext
 
     public LevelScene(GraphicsConfiguration graphicsConfiguration, MarioComponent renderer, long seed, int levelDifficulty, int type)
     {
+        this(graphicsConfiguration, renderer, seed, levelDifficulty, type, new WorldContext());
+    }
+
+    public LevelScene(GraphicsConfiguration graphicsConfiguration, MarioComponent renderer, long seed, int levelDifficulty, int type, WorldContext context)
+    {
+        this.context = context;
+        this.keys = context.keys;
+        this.keyLatch = context.keyLatch;
+        this.particles = new ParticlePool(context.particleRandom);
+        this.sprites = new SpriteStore(particles);
+        this.aiSeed = context.aiRandom.nextLong();
         this.graphicsConfiguration = graphicsConfiguration;
         this.levelSeed = seed;
         this.marioComponent = renderer;
@@ -102,6 +139,63 @@ public class LevelScene extends Scene implements SpriteContext
     public int fireballsOnScreen = 0;
 
     List<Shell> shellsToCheck = new ArrayList<Shell>();
+    private SpriteGrid grid = new SpriteGrid();
+
+    /**
+     * Sets the ticks each attempt gets from the next reset on, so levels
+     * longer than usual can be finished
+     */
+    public void setTimeLimit(int ticks)
+    {
+        this.timeLimit = ticks;
+    }
+
+    /**
+     * Lets agent play mario, seeing the scene through observation every
+     * tick. Null gives the keys back.
+     */
+    public void setAgent(Agent agent, Observation observation)
+    {
+        this.agent = agent;
+        this.observation = observation;
+    }
+
+    /**
+     * Fills in observation with the scene as it is now
+     */
+    public void observe(Observation o)
+    {
+        int xMario = (int) mario.x / 16;
+        int yMario = (int) mario.y / 16;
+        o.originX = xMario - o.width / 2;
+        o.originY = yMario - o.height / 2;
+        level.copyWindow(o.originX, o.originY, o.width, o.height, o.tiles);
+
+        o.enemies = 0;
+        for (int i = 0; i < sprites.size() && o.enemies < o.enemyKind.length; i++)
+        {
+            Sprite sprite = sprites.get(i);
+            int kind;
+            if (sprite instanceof Enemy) kind = ((Enemy) sprite).type;
+            else if (sprite instanceof BulletBill) kind = EventLog.ENEMY_BULLET_BILL;
+            else if (sprite instanceof Shell) kind = EventLog.ENEMY_SHELL;
+            else continue;
+            o.enemyX[o.enemies] = sprite.x;
+            o.enemyY[o.enemies] = sprite.y;
+            o.enemyKind[o.enemies] = kind;
+            o.enemies++;
+        }
+
+        o.marioX = mario.x;
+        o.marioY = mario.y;
+        o.marioXa = mario.xa;
+        o.marioYa = mario.ya;
+        o.large = mario.large;
+        o.fire = mario.fire;
+        o.onGround = mario.isOnGround();
+        o.mayJump = mario.mayJump();
+        o.tick = tick;
+    }
 
     public void checkShellCollide(Shell shell)
     {
@@ -147,20 +241,37 @@ public class LevelScene extends Scene implements SpriteContext
         if (xCam < 0) xCam = 0;
         if (xCam > level.getWidth() * 16 - 320) xCam = level.getWidth() * 16 - 320;
 
-        /*      if (recorder != null)
-         {
-         recorder.addTick(mario.getKeyMask());
-         }
+        // Streaming levels stay a screen ahead of the camera
+        level.generateUpTo((int) (xCam + 320) / 16 + GENERATE_AHEAD);
+
+        // The keys of this tick are fixed here, before anything reads them,
+        // and the same mask is what gets recorded
+        byte keyMask;
+        if (replayer != null)
+        {
+            keyMask = replayer.nextTick();
+        }
+        else if (agent != null)
+        {
+            observe(observation);
+            keyMask = agent.act(observation);
+        }
+        else
+        {
+            keyMask = (byte) latchKeys();
+        }
+        mario.setKeys(keyMask);
 
-         if (replayer!=null)
-         {
-         mario.setKeys(replayer.nextTick());
-         }*/
+        if (inputRecorder != null)
+        {
+            inputRecorder.addTick(keyMask);
+        }
 
         fireballsOnScreen = 0;
 
-        for (Sprite sprite : sprites)
+        for (int i = 0; i < sprites.size(); i++)
         {
+            Sprite sprite = sprites.get(i);
             if (sprite != mario)
             {
                 float xd = sprite.x - xCam;
@@ -181,8 +292,9 @@ public class LevelScene extends Scene implements SpriteContext
 
         if (paused)
         {
-            for (Sprite sprite : sprites)
+            for (int i = 0; i < sprites.size(); i++)
             {
+                Sprite sprite = sprites.get(i);
                 if (sprite == mario)
                 {
                     sprite.tick();
@@ -202,8 +314,8 @@ public class LevelScene extends Scene implements SpriteContext
             boolean hasShotCannon = false;
             int xCannon = 0;
 
-            for (int x = (int) xCam / 16 - 1; x <= (int) (xCam + layer.width) / 16 + 1; x++)
-                for (int y = (int) yCam / 16 - 1; y <= (int) (yCam + layer.height) / 16 + 1; y++)
+            for (int x = (int) xCam / 16 - 1; x <= (int) (xCam + 320) / 16 + 1; x++)
+                for (int y = (int) yCam / 16 - 1; y <= (int) (yCam + 240) / 16 + 1; y++)
                 {
                     int dir = 0;
 
@@ -238,7 +350,7 @@ public class LevelScene extends Scene implements SpriteContext
                                     xCannon = x;
                                     for (int i = 0; i < 8; i++)
                                     {
-                                        addSprite(new Sparkle(x * 16 + 8, y * 16 + (int) (Math.random() * 16), (float) Math.random() * dir, 0, 0, 1, 5));
+                                        addSprite(particles.sparkle(x * 16 + 8, y * 16 + particles.nextInt(16), particles.nextFloat() * dir, 0, 0, 1, 5));
                                     }
                                     addSprite(new BulletBill(this, x * 16 + 8 + dir * 8, y * 16 + 15, dir));
                                     hasShotCannon = true;
@@ -253,20 +365,29 @@ public class LevelScene extends Scene implements SpriteContext
                 sound.play(Art.samples[Art.SAMPLE_CANNON_FIRE], new FixedSoundSource(xCannon * 16, yCam + 120), 1, 1, 1);
             }
 
-            for (Sprite sprite : sprites)
+            for (int i = 0; i < sprites.size(); i++)
             {
+                Sprite sprite = sprites.get(i);
                 sprite.tick();
             }
 
-            for (Sprite sprite : sprites)
+            for (int i = 0; i < sprites.size(); i++)
             {
+                Sprite sprite = sprites.get(i);
                 sprite.collideCheck();
             }
 
+            if (!shellsToCheck.isEmpty() || !fireballsToCheck.isEmpty())
+            {
+                grid.build(sprites, level.getWidth());
+            }
+
             for (Shell shell : shellsToCheck)
             {
-                for (Sprite sprite : sprites)
+                grid.query(shell.x);
+                for (int i = 0; i < grid.size(); i++)
                 {
+                    Sprite sprite = grid.get(i);
                     if (sprite != shell && !shell.dead)
                     {
                         if (sprite.shellCollideCheck(shell))
@@ -284,8 +405,10 @@ public class LevelScene extends Scene implements SpriteContext
 
             for (Fireball fireball : fireballsToCheck)
             {
-                for (Sprite sprite : sprites)
+                grid.query(fireball.x);
+                for (int i = 0; i < grid.size(); i++)
                 {
+                    Sprite sprite = grid.get(i);
                     if (sprite != fireball && !fireball.dead)
                     {
                         if (sprite.fireballCollideCheck(fireball))
@@ -298,10 +421,9 @@ public class LevelScene extends Scene implements SpriteContext
             fireballsToCheck.clear();
         }
 
-        sprites.addAll(0, spritesToAdd);
-        sprites.removeAll(spritesToRemove);
-        spritesToAdd.clear();
-        spritesToRemove.clear();
+        sprites.flush();
+
+        checkEndOfAttempt();
 
         //TODO: THIS IS TEST FLIP
 //        if(keys[Mario.KEY_UP] && tick%2 == 0)
@@ -328,124 +450,184 @@ public class LevelScene extends Scene implements SpriteContext
 //    	}
 //    }
 
-    private DecimalFormat df = new DecimalFormat("00");
-    private DecimalFormat df2 = new DecimalFormat("000");
+    // The HUD is drawn from these every frame without allocating
+    private static final Color ARROW_RED = new Color(255,0,0,150);
+    private static final Color ARROW_BLUE = new Color(0,0,255,150);
+    private static final Color ARROW_OUTLINE = new Color(0,0,0,255);
+    private final char[] digits = new char[11];
+    private final int[] xBlackout = new int[20];
+    private final int[] yBlackout = new int[20];
+
+    /**
+     * Ends the attempt once the win or death blackout has closed. This used
+     * to happen in render, it is done here so the simulation does not depend
+     * on when frames are drawn.
+     */
+    private void checkEndOfAttempt()
+    {
+        if (mario.winTime > 0)
+        {
+            float t = mario.winTime;
+            t = t * t * 0.2f;
+
+            if(recorder != null){
+            	recorder.stopRecord();
+            	recorder.levelWon();
+            }
+
+            if (t > 900)
+            {
+                winActions();
+            }
+        }
+        else if (mario.deathTime > 0)
+        {
+            float t = mario.deathTime;
+            t = t * t * 0.4f;
+
+            if(context.lives <= 0 && recorder != null){
+            	recorder.stopRecord();
+            }
+
+            if (t > 1800)
+            {
+            	context.lives--;
+            	deathActions();
+            }
+        }
+    }
+
+    public void publish(int clock)
+    {
+        super.publish(clock);
+
+        LevelFrame f = frames.back();
+        f.clock = clock;
+        f.tick = tick;
+        f.paused = paused;
+
+        f.layer = layer;
+        f.bgLayer[0] = bgLayer[0];
+        f.bgLayer[1] = bgLayer[1];
+        f.levelWidth = level.getWidth();
+        f.levelHeight = level.getHeight();
+
+        f.marioXOld = mario.xOld;
+        f.marioYOld = mario.yOld;
+        f.marioX = mario.x;
+        f.marioY = mario.y;
+        f.xDeathPos = mario.xDeathPos;
+        f.yDeathPos = mario.yDeathPos;
+        f.startTime = startTime;
+        f.winTime = mario.winTime;
+        f.deathTime = mario.deathTime;
+
+        f.lives = context.lives;
+        f.coins = context.coins;
+        f.levelString = context.levelString;
+        f.timeLeft = timeLeft;
+
+        f.arrowFlipped = widthArrow < 0;
+        f.xPositionsArrow = xPositionsArrow;
+        f.yPositionsArrow = yPositionsArrow;
+
+        f.back.clear();
+        f.front.clear();
+        for (int i = 0; i < sprites.size(); i++)
+        {
+            Sprite sprite = sprites.get(i);
+            if (sprite.layer == 0) sprite.draw(f.back);
+            else if (sprite.layer == 1) sprite.draw(f.front);
+        }
+
+        frames.publish();
+    }
+
+    public int acquire()
+    {
+        frame = frames.front();
+        return frame.clock;
+    }
 
     public void render(Graphics g, float alpha)
     {
-        int xCam = (int) (mario.xOld + (mario.x - mario.xOld) * alpha) - 160;
-        int yCam = (int) (mario.yOld + (mario.y - mario.yOld) * alpha) - 120;
+        LevelFrame f = frame;
+        if (f == null || f.layer == null) return;
+
+        int xCam = (int) (f.marioXOld + (f.marioX - f.marioXOld) * alpha) - 160;
+        int yCam = (int) (f.marioYOld + (f.marioY - f.marioYOld) * alpha) - 120;
         //int xCam = (int) (xCamO + (this.xCam - xCamO) * alpha);
         //        int yCam = (int) (yCamO + (this.yCam - yCamO) * alpha);
         if (xCam < 0) xCam = 0;
         if (yCam < 0) yCam = 0;
-        if (xCam > level.getWidth() * 16 - 320) xCam = level.getWidth() * 16 - 320;
-        if (yCam > level.getHeight() * 16 - 240) yCam = level.getHeight() * 16 - 240;
+        if (xCam > f.levelWidth * 16 - 320) xCam = f.levelWidth * 16 - 320;
+        if (yCam > f.levelHeight * 16 - 240) yCam = f.levelHeight * 16 - 240;
 
         //      g.drawImage(Art.background, 0, 0, null);
 
         for (int i = 0; i < 2; i++)
         {
-            bgLayer[i].setCam(xCam, yCam);
-            bgLayer[i].render(g, tick, alpha);
+            f.bgLayer[i].setCam(xCam, yCam);
+            f.bgLayer[i].render(g, f.tick, alpha);
         }
 
         g.translate(-xCam, -yCam);
-        for (Sprite sprite : sprites)
-        {
-            if (sprite.layer == 0) sprite.render(g, alpha);
-        }
+        f.back.render(g, alpha);
         g.translate(xCam, yCam);
 
         ////////////THIS RENDERS THE LEVEL
-        layer.setCam(xCam, yCam);
-        layer.render(g, tick, paused?0:alpha);
-        layer.renderExit0(g, tick, paused?0:alpha, mario.winTime==0);
+        f.layer.setCam(xCam, yCam);
+        f.layer.render(g, f.tick, f.paused?0:alpha);
+        f.layer.renderExit0(g, f.tick, f.paused?0:alpha, f.winTime==0);
         ////////////END OF LEVEL RENDER
 
 
         ////////////RENDERS SPRITES
         g.translate(-xCam, -yCam);
-        for (Sprite sprite : sprites)
-        {
-            if (sprite.layer == 1) sprite.render(g, alpha);
-        }
+        f.front.render(g, alpha);
         g.translate(xCam, yCam);
         g.setColor(Color.BLACK);
-        layer.renderExit1(g, tick, paused?0:alpha);
+        f.layer.renderExit1(g, f.tick, f.paused?0:alpha);
         ////////////END OF SPRITE RENDERING
 
-        drawStringDropShadow(g, "MARIO " + df.format(Mario.lives), 0, 0, 7);
+        drawStringDropShadow(g, "MARIO ", 0, 0, 7);
+        drawNumberDropShadow(g, f.lives, 2, 6, 0, 7);
 //        drawStringDropShadow(g, "00000000", 0, 1, 7);
 
         drawStringDropShadow(g, "COIN", 14, 0, 7);
-        drawStringDropShadow(g, " "+df.format(Mario.coins), 14, 1, 7);
+        drawNumberDropShadow(g, f.coins, 2, 15, 1, 7);
 
         drawStringDropShadow(g, "WORLD", 24, 0, 7);
-        drawStringDropShadow(g, " "+Mario.levelString, 24, 1, 7);
+        drawStringDropShadow(g, f.levelString, 25, 1, 7);
 
         drawStringDropShadow(g, "TIME", 35, 0, 7);
-        int time = (timeLeft+15-1)/15;
+        int time = (f.timeLeft+15-1)/15;
         if (time<0) time = 0;
-        drawStringDropShadow(g, " "+df2.format(time), 35, 1, 7);
+        drawNumberDropShadow(g, time, 3, 36, 1, 7);
 
-        renderDirectionArrow(g);
+        renderDirectionArrow(g, f);
 
 
-        if (startTime > 0)
+        if (f.startTime > 0)
         {
-            float t = startTime + alpha - 2;
+            float t = f.startTime + alpha - 2;
             t = t * t * 0.6f;
             renderBlackout(g, 160, 120, (int) (t));
         }
 //        mario.x>level.xExit*16
-        if (mario.winTime > 0)
+        if (f.winTime > 0)
         {
-            float t = mario.winTime + alpha;
+            float t = f.winTime + alpha;
             t = t * t * 0.2f;
-
-            if (t > 0){
-                if(recorder != null){
-                	recorder.stopRecord();
-                	recorder.levelWon();
-//                	recorder.printAll();
-                }
-
-            }
-
-            if (t > 900)
-            {
-
-                	winActions();
-                	return;
-
-
-                //              replayer = new Replayer(recorder.getBytes());
-//                init();
-            }
-
-            renderBlackout(g, (int) (mario.xDeathPos - xCam), (int) (mario.yDeathPos - yCam), (int) (320 - t));
+            renderBlackout(g, (int) (f.xDeathPos - xCam), (int) (f.yDeathPos - yCam), (int) (320 - t));
         }
 
-        if (mario.deathTime > 0)
+        if (f.deathTime > 0)
         {
         	g.setColor(Color.BLACK);
-            float t = mario.deathTime + alpha;
+            float t = f.deathTime + alpha;
             t = t * t * 0.4f;
-
-            if(t > 0 && Mario.lives <= 0){
-                if(recorder != null){
-                	recorder.stopRecord();
-                }
-            }
-
-            if (t > 1800)
-            {
-            	Mario.lives--;
-            	deathActions();
-           }
-
-            renderBlackout(g, (int) (mario.xDeathPos - xCam), (int) (mario.yDeathPos - yCam), (int) (320 - t));
+            renderBlackout(g, (int) (f.xDeathPos - xCam), (int) (f.yDeathPos - yCam), (int) (320 - t));
         }
     }
 
@@ -457,10 +639,17 @@ public class LevelScene extends Scene implements SpriteContext
 
     }
 
-    protected void reset(){
-		paused = false;
-        Sprite.spriteContext = this;
-        sprites.clear();
+    /**
+     * Makes level a fresh copy of currentLevel. Only the first call clones,
+     * after that the tiles changed during the attempt are reverted.
+     */
+    protected void restoreLevel()
+    {
+        if (level != null && level.hasSnapshot())
+        {
+            level.revertToSnapshot();
+            return;
+        }
 
         try {
 			level = currentLevel.clone();
@@ -468,9 +657,23 @@ public class LevelScene extends Scene implements SpriteContext
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+        level.snapshot();
+    }
+
+    protected void reset(){
+		paused = false;
+        sprites.clear();
+
+        restoreLevel();
         level.resetSpriteTemplate();
+        startAttempt();
 
-        layer = new LevelRenderer(level, graphicsConfiguration, 320, 240);
+        // Headless scenes have no graphics configuration and never render
+        if (graphicsConfiguration != null)
+        {
+            layer = new LevelRenderer(level, graphicsConfiguration, 320, 240);
+            Art.startMusic(1);
+        }
 
         double oldX = 0;
 
@@ -478,28 +681,54 @@ public class LevelScene extends Scene implements SpriteContext
         	oldX = mario.x;
 
         mario = new Mario(this);
+        mario.spriteContext = this;
         sprites.add(mario);
         startTime = 1;
 
-        timeLeft = 200*15;
-        Art.startMusic(1);
+        timeLeft = timeLimit;
         tick = 0;
 //        recorder = new DataRecorder(this,level,keys,gametype);
         if (recorder != null) {
-        	recorder.detailedLog = "";
+        	recorder.resetDetailedLog();
         }
         gameStarted = false;
 	}
 
-    private void renderDirectionArrow(Graphics g){
-    	if(widthArrow<0)
-    		g.setColor(new Color(0,0,255,150));
+    /**
+     * Restarts the per attempt state that is not part of the level
+     */
+    protected void startAttempt()
+    {
+        aiRandom = new SplittableRandom(aiSeed);
+        if (inputRecorder != null)
+            inputRecorder.newAttempt();
+        if (replayer != null)
+            replayer.nextAttempt();
+    }
+
+    public long getAiSeed()
+    {
+        return aiSeed;
+    }
+
+    /**
+     * Replaces the AI seed drawn from the context, to play a recorded level
+     * again. Takes effect on the next attempt.
+     */
+    public void setAiSeed(long aiSeed)
+    {
+        this.aiSeed = aiSeed;
+    }
+
+    private void renderDirectionArrow(Graphics g, LevelFrame f){
+    	if(f.arrowFlipped)
+    		g.setColor(ARROW_BLUE);
     	else
-    		g.setColor(new Color(255,0,0,150));
+    		g.setColor(ARROW_RED);
 
-    	g.fillPolygon(xPositionsArrow,yPositionsArrow,Math.min(xPositionsArrow.length,yPositionsArrow.length));
-    	g.setColor(new Color(0,0,0,255));
-    	g.drawPolygon(xPositionsArrow,yPositionsArrow,Math.min(xPositionsArrow.length,yPositionsArrow.length));
+    	g.fillPolygon(f.xPositionsArrow,f.yPositionsArrow,Math.min(f.xPositionsArrow.length,f.yPositionsArrow.length));
+    	g.setColor(ARROW_OUTLINE);
+    	g.drawPolygon(f.xPositionsArrow,f.yPositionsArrow,Math.min(f.xPositionsArrow.length,f.yPositionsArrow.length));
     }
 
     private void drawStringDropShadow(Graphics g, String text, int x, int y, int c)
@@ -508,12 +737,38 @@ public class LevelScene extends Scene implements SpriteContext
         drawString(g, text, x*8+4, y*8+4, c);
     }
 
+    /**
+     * Draws value with at least minDigits digits, padded with zeros
+     */
+    private void drawNumberDropShadow(Graphics g, int value, int minDigits, int x, int y, int c)
+    {
+        long v = Math.abs((long) value);
+        int start = digits.length;
+        do
+        {
+            digits[--start] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        while (v > 0 || digits.length - start < minDigits);
+        if (value < 0) digits[--start] = '-';
+
+        drawChars(g, digits, start, x*8+5, y*8+5, 0);
+        drawChars(g, digits, start, x*8+4, y*8+4, c);
+    }
+
+    private void drawChars(Graphics g, char[] ch, int start, int x, int y, int c)
+    {
+        for (int i = start; i < ch.length; i++)
+        {
+            g.drawImage(Art.font[ch[i] - 32][c], x + (i - start) * 8, y, null);
+        }
+    }
+
     private void drawString(Graphics g, String text, int x, int y, int c)
     {
-        char[] ch = text.toCharArray();
-        for (int i = 0; i < ch.length; i++)
+        for (int i = 0; i < text.length(); i++)
         {
-            g.drawImage(Art.font[ch[i] - 32][c], x + i * 8, y, null);
+            g.drawImage(Art.font[text.charAt(i) - 32][c], x + i * 8, y, null);
         }
     }
 
@@ -567,8 +822,8 @@ public class LevelScene extends Scene implements SpriteContext
     {
         if (radius > 320) return;
 
-        int[] xp = new int[20];
-        int[] yp = new int[20];
+        int[] xp = xBlackout;
+        int[] yp = yBlackout;
         for (int i = 0; i < 16; i++)
         {
             xp[i] = x + (int) (Math.cos(i * Math.PI / 15) * radius);
@@ -604,13 +859,14 @@ public class LevelScene extends Scene implements SpriteContext
 
     public void addSprite(Sprite sprite)
     {
-        spritesToAdd.add(sprite);
+        sprite.spriteContext = this;
+        sprites.addLater(sprite);
         sprite.tick();
     }
 
     public void removeSprite(Sprite sprite)
     {
-        spritesToRemove.add(sprite);
+        sprites.removeLater(sprite);
     }
 
     public float getX(float alpha)
@@ -642,7 +898,7 @@ public class LevelScene extends Scene implements SpriteContext
             if (((Level.TILE_BEHAVIORS[block & 0xff]) & Level.BIT_SPECIAL) > 0)
             {
                 sound.play(Art.samples[Art.SAMPLE_ITEM_SPROUT], new FixedSoundSource(x * 16 + 8, y * 16 + 8), 1, 1, 1);
-                if (!Mario.large)
+                if (!mario.large)
                 {
                     addSprite(new Mushroom(this, x * 16 + 8, y * 16 + 8));
                 }
@@ -662,9 +918,9 @@ public class LevelScene extends Scene implements SpriteContext
             		recorder.blockCoinDestroyRecord();
             	}
 
-                Mario.getCoin();
+                mario.getCoin();
                 sound.play(Art.samples[Art.SAMPLE_GET_COIN], new FixedSoundSource(x * 16 + 8, y * 16 + 8), 1, 1, 1);
-                addSprite(new CoinAnim(x, y));
+                addSprite(particles.coinAnim(x, y));
             }
         }
 
@@ -681,7 +937,7 @@ public class LevelScene extends Scene implements SpriteContext
                 level.setBlock(x, y, (byte) 0);
                 for (int xx = 0; xx < 2; xx++)
                     for (int yy = 0; yy < 2; yy++)
-                        addSprite(new Particle(x * 16 + xx * 8 + 4, y * 16 + yy * 8 + 4, (xx * 2 - 1) * 4, (yy * 2 - 1) * 4 - 8));
+                        addSprite(particles.particle(x * 16 + xx * 8 + 4, y * 16 + yy * 8 + 4, (xx * 2 - 1) * 4, (yy * 2 - 1) * 4 - 8));
             }
 
         }
@@ -692,18 +948,19 @@ public class LevelScene extends Scene implements SpriteContext
         byte block = level.getBlock(x, y);
         if (((Level.TILE_BEHAVIORS[block & 0xff]) & Level.BIT_PICKUPABLE) > 0)
         {
-            Mario.getCoin();
+            mario.getCoin();
             sound.play(Art.samples[Art.SAMPLE_GET_COIN], new FixedSoundSource(x * 16 + 8, y * 16 + 8), 1, 1, 1);
             level.setBlock(x, y, (byte) 0);
-            addSprite(new CoinAnim(x, y + 1));
+            addSprite(particles.coinAnim(x, y + 1));
 
             //TODO no idea when this happens... maybe remove coin count
             if(recorder != null)
             	recorder.recordCoin();
         }
 
-        for (Sprite sprite : sprites)
+        for (int i = 0; i < sprites.size(); i++)
         {
+            Sprite sprite = sprites.get(i);
             sprite.bumpCheck(x, y);
         }
     }
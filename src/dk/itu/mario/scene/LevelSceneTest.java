@@ -1,19 +1,16 @@
 package dk.itu.mario.scene;
 import java.awt.GraphicsConfiguration;
-import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
 
 
 import dk.itu.mario.level.BgLevelGenerator;
 import dk.itu.mario.MarioInterface.GamePlay;
 import dk.itu.mario.engine.sonar.FixedSoundSource;
-import dk.itu.mario.engine.sprites.CoinAnim;
 import dk.itu.mario.engine.sprites.FireFlower;
 import dk.itu.mario.engine.sprites.Mario;
 import dk.itu.mario.engine.sprites.Mushroom;
-import dk.itu.mario.engine.sprites.Particle;
 import dk.itu.mario.engine.sprites.Sprite;
 import dk.itu.mario.engine.util.FileHandler;
 
@@ -22,14 +19,17 @@ import dk.itu.mario.engine.BgRenderer;
 import dk.itu.mario.engine.DataRecorder;
 import dk.itu.mario.engine.LevelRenderer;
 import dk.itu.mario.engine.MarioComponent;
+import dk.itu.mario.engine.Recorder;
+import dk.itu.mario.engine.Replay;
+import dk.itu.mario.engine.WorldContext;
 import dk.itu.mario.level.CustomizedLevel;
+import dk.itu.mario.level.DeathHeatmap;
 import dk.itu.mario.level.Level;
 import dk.itu.mario.level.RandomLevel;
 import dk.itu.mario.level.generator.CustomizedLevelGenerator;
 import dk.itu.mario.level.generator.MyLevelGenerator;
 import dk.itu.mario.level.MyLevel;
 import dk.itu.mario.engine.Play;
-import dk.itu.mario.res.ResourcesManager;
 
 	public class LevelSceneTest extends LevelScene{
 
@@ -42,24 +42,22 @@ import dk.itu.mario.res.ResourcesManager;
 
 			public LevelSceneTest(GraphicsConfiguration graphicsConfiguration,
 					MarioComponent renderer, long seed, int levelDifficulty, int type,boolean isCustom){
-				super(graphicsConfiguration,renderer,seed,levelDifficulty,type);
+				this(graphicsConfiguration,renderer,seed,levelDifficulty,type,isCustom,new WorldContext());
+			}
+
+			public LevelSceneTest(GraphicsConfiguration graphicsConfiguration,
+					MarioComponent renderer, long seed, int levelDifficulty, int type,boolean isCustom,WorldContext context){
+				super(graphicsConfiguration,renderer,seed,levelDifficulty,type,context);
 				this.isCustom = isCustom;
 			}
 
 			public void init() {
-		        try
-		        {
-		            Level.loadBehaviors(new DataInputStream(ResourcesManager.class.getResourceAsStream("res/tiles.dat")));
-		        }
-		        catch (IOException e)
-		        {
-		            e.printStackTrace();
-		            System.exit(0);
-		        }
+		        Level.initBehaviors();
 
 		        if(level==null)
 		        	if(isCustom){
-		        		MyLevelGenerator clg = new MyLevelGenerator();
+		        		MyLevelGenerator clg = new MyLevelGenerator(context.deathCount, context.levelRandom);
+		        		clg.setHeatmap(DeathHeatmap.getDefault());
 		        		GamePlay gp = new GamePlay();
 		        		gp = gp.read("player.txt");
 		        		currentLevel = (Level)clg.generateLevel(gp);
@@ -72,17 +70,16 @@ import dk.itu.mario.res.ResourcesManager;
 			        	else
 		        		currentLevel = new RandomLevel(320, 15, levelSeed, levelDifficulty,levelType);
 
-		        try {
-					 level = currentLevel.clone();
-				} catch (CloneNotSupportedException e) {
-					e.printStackTrace();
-				}
+		        restoreLevel();
+
+		        if(isCustom && inputRecorder==null)
+		        	inputRecorder = new Recorder(Replay.of((MyLevel)currentLevel, context, aiSeed));
+		        startAttempt();
 
 		        //level is always overground
 		        Art.startMusic(1);
 
 		        paused = false;
-		        Sprite.spriteContext = this;
 		        sprites.clear();
 
 		        layer = new LevelRenderer(level, graphicsConfiguration, 320, 240);
@@ -100,6 +97,7 @@ import dk.itu.mario.res.ResourcesManager;
 		        	oldX = mario.x;
 
 		        mario = new Mario(this);
+		        mario.spriteContext = this;
 		        sprites.add(mario);
 		        startTime = 1;
 
@@ -139,6 +137,7 @@ import dk.itu.mario.res.ResourcesManager;
 			}
 
 			public void winActions(){
+				saveReplay();
 				
 				// Update the metrics to include the previous level
 				if(recorder != null) {
@@ -149,10 +148,12 @@ import dk.itu.mario.res.ResourcesManager;
 				if (marioComponent.getLevelNum() == marioComponent.getNumLevels()) {
 					recorder.reset(); // write over old data
 					recorder.fillGamePlayMetrics((MyLevel)level);
+					recorder.close();
 					marioComponent.win();
 				}
 				else {
 					recorder.fillGamePlayMetrics((MyLevel)level);
+					recorder.close();
 					recorder = null;
 					//recorder.reset(); // TODO Check
 					marioComponent.generateNextLevel();
@@ -160,10 +161,12 @@ import dk.itu.mario.res.ResourcesManager;
 			}
 
 			public void deathActions(){
-				if(Mario.lives <=0){//has no more lives
+				if(context.lives <=0){//has no more lives
+					saveReplay();
 					if(recorder != null) {
 						recorder.reset();
 						recorder.fillGamePlayMetrics((MyLevel)level);
+						recorder.close();
 					}
 					marioComponent.lose();
 				}
@@ -171,6 +174,19 @@ import dk.itu.mario.res.ResourcesManager;
 					reset();
 			}
 
+			/**
+			 * Writes the keys of this level to replay.mrp, next to player.txt
+			 */
+			private void saveReplay(){
+				if(inputRecorder == null)
+					return;
+				try {
+					inputRecorder.getReplay().save(new File("replay.mrp"));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+
 			public void bump(int x, int y, boolean canBreakBricks)
 		    {
 		        byte block = level.getBlock(x, y);
@@ -183,7 +199,7 @@ import dk.itu.mario.res.ResourcesManager;
 		            if (((Level.TILE_BEHAVIORS[block & 0xff]) & Level.BIT_SPECIAL) > 0)
 		            {
 		                sound.play(Art.samples[Art.SAMPLE_ITEM_SPROUT], new FixedSoundSource(x * 16 + 8, y * 16 + 8), 1, 1, 1);
-		                if (!Mario.large)
+		                if (!mario.large)
 		                {
 		                    addSprite(new Mushroom(this, x * 16 + 8, y * 16 + 8));
 		                }
@@ -203,9 +219,9 @@ import dk.itu.mario.res.ResourcesManager;
 		            		recorder.blockCoinDestroyRecord();
 		            	}
 
-		                Mario.getCoin();
+		                mario.getCoin();
 		                sound.play(Art.samples[Art.SAMPLE_GET_COIN], new FixedSoundSource(x * 16 + 8, y * 16 + 8), 1, 1, 1);
-		                addSprite(new CoinAnim(x, y));
+		                addSprite(particles.coinAnim(x, y));
 		            }
 		        }
 
@@ -222,7 +238,7 @@ import dk.itu.mario.res.ResourcesManager;
 		                level.setBlock(x, y, (byte) 0);
 		                for (int xx = 0; xx < 2; xx++)
 		                    for (int yy = 0; yy < 2; yy++)
-		                        addSprite(new Particle(x * 16 + xx * 8 + 4, y * 16 + yy * 8 + 4, (xx * 2 - 1) * 4, (yy * 2 - 1) * 4 - 8));
+		                        addSprite(particles.particle(x * 16 + xx * 8 + 4, y * 16 + yy * 8 + 4, (xx * 2 - 1) * 4, (yy * 2 - 1) * 4 - 8));
 		            }
 
 		        }
@@ -233,10 +249,10 @@ import dk.itu.mario.res.ResourcesManager;
 			        byte block = level.getBlock(x, y);
 			        if (((Level.TILE_BEHAVIORS[block & 0xff]) & Level.BIT_PICKUPABLE) > 0)
 			        {
-			            Mario.getCoin();
+			            mario.getCoin();
 			            sound.play(Art.samples[Art.SAMPLE_GET_COIN], new FixedSoundSource(x * 16 + 8, y * 16 + 8), 1, 1, 1);
 			            level.setBlock(x, y, (byte) 0);
-			            addSprite(new CoinAnim(x, y + 1));
+			            addSprite(particles.coinAnim(x, y + 1));
 
 
 			            //TODO no idea when this happens... maybe remove coin count
@@ -244,16 +260,13 @@ import dk.itu.mario.res.ResourcesManager;
 			            	recorder.recordCoin();
 			        }
 
-			        for (Sprite sprite : sprites)
+			        for (int i = 0; i < sprites.size(); i++)
 			        {
+			            Sprite sprite = sprites.get(i);
 			            sprite.bumpCheck(x, y);
 			        }
 			    }
 
-			private int randomNumber(int low, int high){
-				return new Random(new Random().nextLong()).nextInt(high-low)+low;
-			}
-
 			private int toBlock(float n){
 				return (int)(n/16);
 			}
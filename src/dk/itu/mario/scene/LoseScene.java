@@ -45,6 +45,7 @@ public class LoseScene extends Scene
     private boolean wasDown = true;
     public void tick()
     {
+        latchKeys();
         tick++;
         if (!wasDown && keys[Mario.KEY_JUMP])
         {
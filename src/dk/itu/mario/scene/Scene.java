@@ -2,6 +2,7 @@ package dk.itu.mario.scene;
 
 import java.awt.Graphics;
 import java.awt.event.MouseEvent;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 import dk.itu.mario.engine.sonar.SonarSoundEngine;
@@ -11,7 +12,7 @@ import dk.itu.mario.engine.sonar.SoundListener;
 public abstract class Scene implements SoundListener
 {
     public SonarSoundEngine sound;
-    public static boolean[] keys = new boolean[16];
+    public boolean[] keys = new boolean[16];
     
 	public static final int COLOR_BLACK = 0;
 	public static final int COLOR_RED = 1;
@@ -22,9 +23,39 @@ public abstract class Scene implements SoundListener
 	public static final int COLOR_LIGHTBLUE = 6;
 	public static final int COLOR_WHITE = 7;
 
+    // The keys as the input thread last set them, bit 1 << key for every
+    // key that is down. Only the simulation thread copies them into keys,
+    // once per tick, so a tick never sees the keys change halfway.
+    protected AtomicInteger keyLatch = new AtomicInteger();
+
+    /**
+     * Called on the input thread
+     */
     public void toggleKey(int key, boolean isPressed)
     {
-        keys[key] = isPressed;
+        int bit = 1 << key;
+        int mask;
+        do
+        {
+            mask = keyLatch.get();
+        }
+        while (!keyLatch.compareAndSet(mask, isPressed ? mask | bit : mask & ~bit));
+    }
+
+    /**
+     * Copies the latched keys into keys. Called on the simulation thread at
+     * the start of a tick.
+     *
+     * @return the keys, as a mask like Mario.getKeyMask
+     */
+    protected int latchKeys()
+    {
+        int mask = keyLatch.get();
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = (mask & (1 << i)) != 0;
+        }
+        return mask;
     }
 
     public final void setSound(SonarSoundEngine sound)
@@ -40,4 +71,29 @@ public abstract class Scene implements SoundListener
     public abstract void tick();
 
     public abstract void render(Graphics og, float alpha);
+
+    // -1 until the first publish
+    private volatile int publishedClock = -1;
+
+    /**
+     * Called on the simulation thread after every tick, with the number of
+     * that tick. Scenes that render from a snapshot of their state copy it
+     * here.
+     */
+    public void publish(int clock)
+    {
+        publishedClock = clock;
+    }
+
+    /**
+     * Called on the render thread before render, to pick the newest state
+     * that was published.
+     *
+     * @return the clock that state was published with, which alpha is
+     *         relative to, or -1 if nothing was published yet
+     */
+    public int acquire()
+    {
+        return publishedClock;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package dk.itu.mario.scene;
+
+import java.util.Arrays;
+
+import dk.itu.mario.engine.sprites.Sprite;
+import dk.itu.mario.engine.sprites.SpriteStore;
+
+/**
+ * Broad phase for the shell and fireball checks in LevelScene.tick. Sprites
+ * are bucketed by 16 pixel tile column; the pairwise checks only hit when
+ * the sprites are less than 16 pixels apart horizontally, so a query only
+ * has to look at the column below the point and its two neighbours.
+ *
+ * Buckets are linked lists through int arrays, so rebuilding every tick does
+ * not allocate once the arrays have grown to the largest sprite count seen.
+ * Query results come back in the same order as the sprite list, so the
+ * first sprite hit is the same one the full scan would have found.
+ */
+final class SpriteGrid
+{
+    private int columns;
+    private int[] head = new int[0];
+    private int[] next = new int[64];
+    private Sprite[] sprites = new Sprite[64];
+
+    private int[] result = new int[64];
+    private int resultSize;
+
+    /**
+     * Buckets all sprites. Sprites left or right of the level are put in the
+     * first or last column, which still keeps every query a superset.
+     */
+    void build(SpriteStore list, int levelWidth)
+    {
+        int n = list.size();
+        if (sprites.length < n)
+        {
+            sprites = new Sprite[n * 2];
+            next = new int[n * 2];
+            result = new int[n * 2];
+        }
+        columns = levelWidth;
+        if (head.length < columns)
+            head = new int[columns];
+        Arrays.fill(head, 0, columns, -1);
+
+        // Prepend from the back so every bucket ends up in ascending order
+        for (int i = n - 1; i >= 0; i--)
+        {
+            Sprite sprite = list.get(i);
+            sprites[i] = sprite;
+            int c = column(sprite.x);
+            next[i] = head[c];
+            head[c] = i;
+        }
+        for (int i = n; i < sprites.length && sprites[i] != null; i++)
+            sprites[i] = null;
+    }
+
+    /**
+     * Finds the sprites that could be within 16 pixels of x. Read them back
+     * with size() and get(i), which are valid until the next query.
+     */
+    void query(float x)
+    {
+        int c = (int) Math.floor(x / 16);
+        int from = clamp(c - 1);
+        int to = clamp(c + 1);
+
+        // Three way merge of the sorted buckets
+        int a = from <= to ? head[from] : -1;
+        int b = from + 1 <= to ? head[from + 1] : -1;
+        int d = from + 2 <= to ? head[from + 2] : -1;
+        resultSize = 0;
+        while (a >= 0 || b >= 0 || d >= 0)
+        {
+            int min = Integer.MAX_VALUE;
+            if (a >= 0 && a < min) min = a;
+            if (b >= 0 && b < min) min = b;
+            if (d >= 0 && d < min) min = d;
+
+            result[resultSize++] = min;
+            if (a == min) a = next[a];
+            else if (b == min) b = next[b];
+            else d = next[d];
+        }
+    }
+
+    int size()
+    {
+        return resultSize;
+    }
+
+    Sprite get(int i)
+    {
+        return sprites[result[i]];
+    }
+
+    private int column(float x)
+    {
+        return clamp((int) Math.floor(x / 16));
+    }
+
+    private int clamp(int c)
+    {
+        if (c < 0) return 0;
+        if (c >= columns) return columns - 1;
+        return c;
+    }
+}
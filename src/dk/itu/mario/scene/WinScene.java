@@ -42,6 +42,7 @@ public class WinScene extends Scene
     private boolean wasDown = true;
     public void tick()
     {
+        latchKeys();
         tick++;
         if (!wasDown && keys[Mario.KEY_JUMP])
         {
@@ -0,0 +1,490 @@
+package maven.code;
+
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+import dk.itu.mario.engine.sprites.Enemy;
+import dk.itu.mario.level.Level;
+import dk.itu.mario.level.MyLevel;
+
+/**
+ * Reads configurations from a text file instead of a class each. Every
+ * chunk is compiled once into an int program and its stamps into runs of
+ * tiles, so applying one is a loop over those arrays.
+ *
+ *   # comment
+ *   chunk name
+ *   param h 2 4            drawn from level.getRandom() in order, min to max
+ *   straight 2             the MyLevel method of the same name at the cursor
+ *   stamp 3 2              the next 2 lines are the tiles, top row first,
+ *   ?!?                    with the bottom row at the cursor height. The
+ *   ...                    cursor does not move.
+ *   straight h+1
+ *   end
+ *
+ * Ops, with the MyLevel method they call:
+ *
+ *   straight n, ceiling n, island w h, hill w h, jump n dy
+ *   move dx dy             moves the cursor
+ *   coin, block h tile, pipe h [flower], cannon h
+ *   enemy type [winged]    red_koopa, green_koopa, goomba, spiky, flower
+ *
+ * Numbers can be a literal, or a param or minus a param plus or minus a
+ * literal, like h, h+1 or -h-1.
+ * Tiles of block are ground, rock, coin, empty, power or a tile number.
+ * Stamp tiles are '.' to leave the tile, '_' sky, '#' ground, 'R' rock,
+ * 'o' coin, '?' coin block, '!' power up block and '=' empty block.
+ */
+public class ConfigurationLibrary {
+
+	private static final int STRAIGHT = 0;
+	private static final int CEILING = 1;
+	private static final int ISLAND = 2;
+	private static final int HILL = 3;
+	private static final int JUMP = 4;
+	private static final int MOVE = 5;
+	private static final int COIN = 6;
+	private static final int BLOCK = 7;
+	private static final int PIPE = 8;
+	private static final int CANNON = 9;
+	private static final int ENEMY = 10;
+	private static final int STAMP = 11;
+
+	// Name, opcode and number of numbers it takes
+	private static final Object[][] OPS = {
+		{ "straight", STRAIGHT, 1 },
+		{ "ceiling", CEILING, 1 },
+		{ "island", ISLAND, 2 },
+		{ "hill", HILL, 2 },
+		{ "jump", JUMP, 2 },
+		{ "move", MOVE, 2 },
+		{ "coin", COIN, 0 },
+		{ "block", BLOCK, 1 },
+		{ "pipe", PIPE, 1 },
+		{ "cannon", CANNON, 1 },
+		{ "enemy", ENEMY, 0 },
+		{ "stamp", STAMP, 2 },
+	};
+
+	private static final Map<String, Object[]> OP_NAMES = new HashMap<String, Object[]>();
+	static {
+		for (Object[] op : OPS)
+			OP_NAMES.put((String) op[0], op);
+	}
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private ConfigurationLibrary() {
+	}
+
+	/**
+	 * Reads the chunks in file, giving them the ids from firstId on in the
+	 * order they are in the file
+	 */
+	public static List<Configuration> load(File file, int firstId) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			return read(in, firstId);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static List<Configuration> read(BufferedReader in, int firstId) throws IOException {
+		List<Configuration> chunks = new ArrayList<Configuration>();
+		Compiler compiler = null;
+		int lineNumber = 0;
+		String line;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			int comment = line.indexOf('#');
+			if (comment >= 0)
+				line = line.substring(0, comment);
+			String[] words = WHITESPACE.split(line.trim());
+			if (words[0].length() == 0)
+				continue;
+
+			try {
+				if (words[0].equals("chunk")) {
+					if (compiler != null)
+						throw new IOException("chunk " + compiler.name + " has no end");
+					if (words.length != 2)
+						throw new IOException("chunk takes a name");
+					compiler = new Compiler(words[1]);
+				} else if (compiler == null) {
+					throw new IOException(words[0] + " outside a chunk");
+				} else if (words[0].equals("end")) {
+					chunks.add(compiler.compile(firstId + chunks.size()));
+					compiler = null;
+				} else if (words[0].equals("param")) {
+					compiler.param(words);
+				} else {
+					int rows = compiler.op(words);
+					for (int i = 0; i < rows; i++) {
+						String row = in.readLine();
+						lineNumber++;
+						if (row == null)
+							throw new IOException("stamp is missing rows");
+						compiler.stampRow(row.trim());
+					}
+				}
+			} catch (IOException e) {
+				throw new IOException("line " + lineNumber + ": " + e.getMessage());
+			} catch (NumberFormatException e) {
+				throw new IOException("line " + lineNumber + ": not a number, " + e.getMessage());
+			}
+		}
+		if (compiler != null)
+			throw new IOException("chunk " + compiler.name + " has no end");
+		return chunks;
+	}
+
+	/**
+	 * Turns the lines of one chunk into its program. Every op is its opcode,
+	 * then per number the index of the param it adds to (-1 for none) and
+	 * the literal, then its flag or tile.
+	 */
+	private static class Compiler {
+
+		final String name;
+		final Map<String, Integer> params = new HashMap<String, Integer>();
+		final List<Integer> paramMin = new ArrayList<Integer>();
+		final List<Integer> paramSpan = new ArrayList<Integer>();
+		final List<Integer> code = new ArrayList<Integer>();
+		final List<int[]> stamps = new ArrayList<int[]>();
+		final List<byte[]> stampTiles = new ArrayList<byte[]>();
+
+		// The stamp being read
+		char[][] rows;
+		int rowsRead;
+		int stampWidth;
+
+		Compiler(String name) {
+			this.name = name;
+		}
+
+		void param(String[] words) throws IOException {
+			if (words.length != 4)
+				throw new IOException("param takes a name, min and max");
+			int min = Integer.parseInt(words[2]);
+			int max = Integer.parseInt(words[3]);
+			if (max < min)
+				throw new IOException("param " + words[1] + " has max below min");
+			if (params.put(words[1], params.size()) != null)
+				throw new IOException("param " + words[1] + " is already declared");
+			paramMin.add(min);
+			paramSpan.add(max - min + 1);
+		}
+
+		/**
+		 * @return the number of stamp rows that follow
+		 */
+		int op(String[] words) throws IOException {
+			Object[] op = OP_NAMES.get(words[0]);
+			if (op == null)
+				throw new IOException("unknown op " + words[0]);
+
+			int opcode = (Integer) op[1];
+			int numbers = (Integer) op[2];
+			// block takes a tile after its number, enemy a type, and pipe
+			// and enemy can end in a flag
+			int required = numbers + (opcode == BLOCK || opcode == ENEMY ? 1 : 0);
+			int optional = opcode == PIPE || opcode == ENEMY ? 1 : 0;
+			if (words.length - 1 < required || words.length - 1 > required + optional)
+				throw new IOException(words[0] + " takes " + required + " arguments");
+
+			code.add(opcode);
+			for (int i = 0; i < numbers; i++)
+				number(words[1 + i]);
+
+			switch (opcode) {
+			case BLOCK:
+				code.add((int) tile(words[2]));
+				return 0;
+			case ENEMY:
+				code.add(enemy(words[1]));
+				code.add(flag(words, 2, "winged"));
+				return 0;
+			case PIPE:
+				code.add(flag(words, 2, "flower"));
+				return 0;
+			case STAMP:
+				// The tiles are compiled up front, so the size can not be a
+				// param
+				if (code.get(code.size() - 4) != -1 || code.get(code.size() - 2) != -1)
+					throw new IOException("stamp sizes can not be params");
+				stampWidth = code.get(code.size() - 3);
+				int h = code.get(code.size() - 1);
+				if (stampWidth <= 0 || h <= 0)
+					throw new IOException("stamp must be at least 1 by 1");
+				code.add(stamps.size());
+				stamps.add(null);
+				stampTiles.add(null);
+				rows = new char[h][];
+				rowsRead = 0;
+				return h;
+			default:
+				return 0;
+			}
+		}
+
+		void stampRow(String row) throws IOException {
+			if (row.length() != stampWidth)
+				throw new IOException("stamp row is not " + stampWidth + " wide");
+			rows[rowsRead++] = row.toCharArray();
+			if (rowsRead == rows.length)
+				compileStamp(stampWidth, rows.length);
+		}
+
+		/**
+		 * Cuts every column of the stamp into runs of tiles that are set, as
+		 * (column, row from the top, length, offset into the tiles)
+		 */
+		void compileStamp(int w, int h) throws IOException {
+			List<Integer> runs = new ArrayList<Integer>();
+			byte[] tiles = new byte[w * h];
+			int n = 0;
+			for (int x = 0; x < w; x++) {
+				int y = 0;
+				while (y < h) {
+					if (rows[y][x] == '.') {
+						y++;
+						continue;
+					}
+					int start = y;
+					runs.add(x);
+					runs.add(start);
+					while (y < h && rows[y][x] != '.')
+						tiles[n + y - start] = stampTile(rows[y++][x]);
+					runs.add(y - start);
+					runs.add(n);
+					n += y - start;
+				}
+			}
+			int[] compiled = new int[runs.size()];
+			for (int i = 0; i < compiled.length; i++)
+				compiled[i] = runs.get(i);
+			stamps.set(stamps.size() - 1, compiled);
+			stampTiles.set(stampTiles.size() - 1, tiles);
+			rows = null;
+		}
+
+		void number(String word) throws IOException {
+			boolean negate = word.startsWith("-") && params.containsKey(word.substring(1).split("[+-]")[0]);
+			if (negate)
+				word = word.substring(1);
+			int split = Math.max(word.lastIndexOf('+'), word.lastIndexOf('-'));
+			String param = word;
+			int literal = 0;
+			if (split > 0) {
+				param = word.substring(0, split);
+				literal = Integer.parseInt(word.substring(split + (word.charAt(split) == '+' ? 1 : 0)));
+			}
+			Integer index = params.get(param);
+			if (index == null) {
+				if (split > 0)
+					throw new IOException("unknown param " + param);
+				code.add(-1);
+				code.add(Integer.parseInt(word));
+			} else {
+				code.add(negate ? -2 - index : index);
+				code.add(literal);
+			}
+		}
+
+		Chunk compile(int id) throws IOException {
+			if (rows != null)
+				throw new IOException("stamp is missing rows");
+			Chunk chunk = new Chunk(id, name);
+			chunk.paramMin = toArray(paramMin);
+			chunk.paramSpan = toArray(paramSpan);
+			chunk.code = toArray(code);
+			chunk.stamps = stamps.toArray(new int[stamps.size()][]);
+			chunk.stampTiles = stampTiles.toArray(new byte[stampTiles.size()][]);
+			return chunk;
+		}
+	}
+
+	private static int flag(String[] words, int at, String flag) throws IOException {
+		if (words.length <= at)
+			return 0;
+		if (!words[at].equals(flag))
+			throw new IOException("expected " + flag + ", not " + words[at]);
+		return 1;
+	}
+
+	private static int enemy(String word) {
+		if (word.equals("red_koopa"))
+			return Enemy.ENEMY_RED_KOOPA;
+		if (word.equals("green_koopa"))
+			return Enemy.ENEMY_GREEN_KOOPA;
+		if (word.equals("goomba"))
+			return Enemy.ENEMY_GOOMBA;
+		if (word.equals("spiky"))
+			return Enemy.ENEMY_SPIKY;
+		if (word.equals("flower"))
+			return Enemy.ENEMY_FLOWER;
+		return Integer.parseInt(word);
+	}
+
+	private static byte tile(String word) {
+		if (word.equals("ground"))
+			return Level.GROUND;
+		if (word.equals("rock"))
+			return Level.ROCK;
+		if (word.equals("coin"))
+			return Level.BLOCK_COIN;
+		if (word.equals("empty"))
+			return Level.BLOCK_EMPTY;
+		if (word.equals("power"))
+			return Level.BLOCK_POWERUP;
+		return (byte) Integer.parseInt(word);
+	}
+
+	private static byte stampTile(char c) throws IOException {
+		switch (c) {
+		case '_':
+			return 0;
+		case '#':
+			return Level.GROUND;
+		case 'R':
+			return Level.ROCK;
+		case 'o':
+			return Level.COIN;
+		case '?':
+			return Level.BLOCK_COIN;
+		case '!':
+			return Level.BLOCK_POWERUP;
+		case '=':
+			return Level.BLOCK_EMPTY;
+		default:
+			throw new IOException("unknown stamp tile " + c);
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	/**
+	 * A compiled chunk
+	 */
+	private static class Chunk extends Configuration {
+
+		final String name;
+		int[] paramMin;
+		int[] paramSpan;
+		int[] code;
+		int[][] stamps;
+		byte[][] stampTiles;
+
+		Chunk(int id, String name) {
+			super(id);
+			this.name = name;
+		}
+
+		@Override
+		public Point apply(Point at, MyLevel level) {
+			SplittableRandom random = level.getRandom();
+			int[] params = new int[paramMin.length];
+			for (int i = 0; i < params.length; i++)
+				params[i] = paramMin[i] + random.nextInt(paramSpan[i]);
+
+			int[] code = this.code;
+			int pc = 0;
+			while (pc < code.length) {
+				int op = code[pc++];
+				switch (op) {
+				case STRAIGHT:
+					level.straight(at, value(params, pc));
+					pc += 2;
+					break;
+				case CEILING:
+					level.ceiling(at, value(params, pc));
+					pc += 2;
+					break;
+				case ISLAND:
+					level.island(at, value(params, pc), value(params, pc + 2));
+					pc += 4;
+					break;
+				case HILL:
+					level.hill(at, value(params, pc), value(params, pc + 2));
+					pc += 4;
+					break;
+				case JUMP:
+					level.jump(at, value(params, pc), value(params, pc + 2));
+					pc += 4;
+					break;
+				case MOVE:
+					at.x += value(params, pc);
+					at.y += value(params, pc + 2);
+					pc += 4;
+					break;
+				case COIN:
+					level.coin(at);
+					break;
+				case BLOCK:
+					level.block(at, value(params, pc), (byte) code[pc + 2]);
+					pc += 3;
+					break;
+				case PIPE:
+					level.pipe(at, value(params, pc), code[pc + 2] != 0);
+					pc += 3;
+					break;
+				case CANNON:
+					level.cannon(at, value(params, pc));
+					pc += 2;
+					break;
+				case ENEMY:
+					level.enemy(at, code[pc], code[pc + 1] != 0);
+					pc += 2;
+					break;
+				case STAMP:
+					stamp(level, at, code[pc + 3], stamps[code[pc + 4]], stampTiles[code[pc + 4]]);
+					pc += 5;
+					break;
+				default:
+					throw new IllegalStateException("Bad opcode " + op + " in " + name);
+				}
+			}
+			return at;
+		}
+
+		private int value(int[] params, int pc) {
+			int param = code[pc];
+			if (param == -1)
+				return code[pc + 1];
+			if (param < -1)
+				return code[pc + 1] - params[-2 - param];
+			return params[param] + code[pc + 1];
+		}
+
+		/**
+		 * The bottom row of the stamp goes at the cursor height, so its top
+		 * row is h - 1 above that
+		 */
+		private static void stamp(MyLevel level, Point at, int h, int[] runs, byte[] tiles) {
+			int top = level.y(at.y + h - 1);
+			for (int i = 0; i < runs.length; i += 4)
+				level.setBlocks(at.x + runs[i], top + runs[i + 1], tiles, runs[i + 3], runs[i + 2]);
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
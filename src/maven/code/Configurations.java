@@ -1,9 +1,15 @@
 package maven.code;
 
 import java.awt.Point;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashSet;
-import java.util.Random;
+import java.util.List;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32;
 
 import dk.itu.mario.engine.sprites.Enemy;
 import dk.itu.mario.level.Level;
@@ -38,10 +44,58 @@ public class Configurations {
 		configs.add(pipe(false));
 		configs.add(cannon());
 		configs.add(jumpSpike());
+
+		// And the chunks of the library, after the ones above so their ids
+		// stay the same
+		File file = new File(LIBRARY_FILE);
+		if (file.isFile()) {
+			try {
+				List<Configuration> chunks = ConfigurationLibrary.load(file, id);
+				id += chunks.size();
+				configs.addAll(chunks);
+				librarySize = chunks.size();
+				libraryChecksum = checksum(file);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/*
+	 * Chunks declared in this file next to player.txt are added to the
+	 * configurations, see ConfigurationLibrary for the format
+	 */
+	public static final String LIBRARY_FILE = "configurations.txt";
+
+	private int librarySize;
+	private long libraryChecksum;
+
+	/**
+	 * @return a string that changes when the configurations do, for caches
+	 *         of generated levels
+	 */
+	public static String signature() {
+		Configurations configurations = instance();
+		return configurations.configs.size() + "/" + configurations.librarySize + "/"
+				+ Long.toHexString(configurations.libraryChecksum);
+	}
+
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[1 << 13];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				crc.update(buffer, 0, n);
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
 	}
 
 	private static Configurations instance;
-	private static Configurations instance() {
+	private static synchronized Configurations instance() {
 		if (instance == null) {
 			instance = new Configurations();
 		}
@@ -57,7 +111,6 @@ public class Configurations {
 	 * Static
 	 */
 
-	private static Random random = new Random();
 	private static int id = 0;
 
 	public static Set<Configuration> configs() {
@@ -69,6 +122,7 @@ public class Configurations {
 
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				at = level.straight(at, 2);
 				int h = random.nextInt(5) + 3;
 				if (at.y + h < level.getHeight()) {
@@ -98,6 +152,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				return level.straight(at, random.nextInt(5) + 2);
 			}
 		};
@@ -107,6 +162,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				int h = random.nextInt(7) - 3;
 				while (at.y + h >= level.getHeight() || at.y + h <= 0) {
 					h = random.nextInt(7) - 3;
@@ -133,6 +189,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				int h = random.nextInt(2) + 3;
 				int w = random.nextInt(5) + 5;
 
@@ -150,7 +207,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
-
+				SplittableRandom random = level.getRandom();
 				int hill1 = random.nextInt(6) + 2;
 				int hill2 = random.nextInt(6) + 2;
 
@@ -240,6 +297,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				int w = random.nextInt(4) + 2;
 				int d = random.nextInt(7) - 3;
 				while (at.y + d <= 0 || at.y + d >= level.getHeight()) {
@@ -258,6 +316,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				at = level.straight(at, 1);
 				int w = random.nextInt(6) + 1;
 				int h = random.nextInt(2) + 2;
@@ -276,6 +335,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				at = level.straight(at, 1);
 				int w = random.nextInt(6) + 1;
 				int h = random.nextInt(2) + 2;
@@ -304,6 +364,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				at = level.straight(at, 1);
 				int h = random.nextInt(2) + 2;
 				level.pipe(at, h, flower);
@@ -316,6 +377,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				at = level.straight(at, 1);
 				int h = random.nextInt(2) + 2;
 				level.cannon(at, h);
@@ -334,7 +396,7 @@ public class Configurations {
 
 				for (int i = 0; i < 5; i++) {
 					if (i == 0) {
-						level.enemy(new Point(at.x, at.y), Enemy.randomEnemy(), false);
+						level.enemy(new Point(at.x, at.y), Enemy.randomEnemy(level.getRandom()), false);
 					}
 					
 					level.block(at, -1, Level.ROCK);
@@ -367,6 +429,7 @@ public class Configurations {
 		return new Configuration(id++) {
 			@Override
 			public Point apply(Point at, MyLevel level) {
+				SplittableRandom random = level.getRandom();
 				int h = random.nextInt(7) - 3;
 				while (at.y + h >= level.getHeight() || at.y + h <= 0) {
 					h = random.nextInt(7) - 3;